@@ -0,0 +1,16 @@
+package org.resthub.web.springmvc.router.benchmark;
+
+import org.springframework.stereotype.Controller;
+
+/**
+ * Controller all the generated routes point to.
+ *
+ * @author Brian Clozel
+ */
+@Controller
+public class BenchmarkController {
+
+    public String handle() {
+        return "benchmark";
+    }
+}
@@ -0,0 +1,19 @@
+package org.resthub.web.springmvc.router.benchmark;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.resthub.web.springmvc.router.RouterHandlerMapping;
+
+/**
+ * Exposes {@link RouterHandlerMapping#getHandlerInternal(HttpServletRequest)}
+ * to the benchmarks.
+ *
+ * @author Brian Clozel
+ */
+public class BenchmarkHandlerMapping extends RouterHandlerMapping {
+
+    @Override
+    public Object getHandlerInternal(HttpServletRequest request) throws Exception {
+        return super.getHandlerInternal(request);
+    }
+}
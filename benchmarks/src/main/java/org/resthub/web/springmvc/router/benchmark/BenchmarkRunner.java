@@ -0,0 +1,48 @@
+package org.resthub.web.springmvc.router.benchmark;
+
+import java.io.File;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run benchmarks once per thread count, with the allocation profiler.
+ *
+ * <p>Usage: <code>java -cp target/benchmarks.jar
+ * org.resthub.web.springmvc.router.benchmark.BenchmarkRunner [threads]
+ * [JMH options]</code>, where <code>threads</code> is a comma separated list
+ * of thread counts (default: 1, 4 and the number of processors). Results
+ * are written to <code>benchmark-[threads]t.json</code>.
+ *
+ * @author Brian Clozel
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String threads = "1,4," + Runtime.getRuntime().availableProcessors();
+        String[] jmhArgs = args;
+        if (args.length > 0 && args[0].matches("[0-9]+(,[0-9]+)*")) {
+            threads = args[0];
+            jmhArgs = new String[args.length - 1];
+            System.arraycopy(args, 1, jmhArgs, 0, jmhArgs.length);
+        }
+        CommandLineOptions commandLine = new CommandLineOptions(jmhArgs);
+        for (String count : threads.split(",")) {
+            Options options = new OptionsBuilder()
+                    .parent(commandLine)
+                    .threads(Integer.parseInt(count))
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(new File("benchmark-" + count + "t.json").getPath())
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.resthub.web.springmvc.router.benchmark;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.resthub.web.springmvc.router.HTTPRequestAdapter;
+import org.resthub.web.springmvc.router.Router;
+import org.resthub.web.springmvc.router.RouterContext;
+import org.resthub.web.springmvc.router.exceptions.NoRouteFoundException;
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.support.StaticWebApplicationContext;
+
+/**
+ * Forward routing throughput, from a parsed request to its route and from a
+ * servlet request to its handler.
+ *
+ * <p>Route tables are generated by {@link RouteTables}, and each request
+ * targets the first, middle or last route of its table, or no route at all.
+ * Routes are evaluated by the default linear scan, or by the automaton
+ * matching engine.
+ *
+ * @author Brian Clozel
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForwardRoutingBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class RouteTableState {
+
+        @Param({"10", "1000", "10000"})
+        public int routes;
+
+        @Param({"static", "regex", "host", "qsparam", "mixed"})
+        public String mix;
+
+        @Param({"first", "middle", "last", "miss"})
+        public String position;
+
+        @Param({"linear", "automaton"})
+        public String engine;
+
+        StaticWebApplicationContext applicationContext;
+
+        BenchmarkHandlerMapping handlerMapping;
+
+        RouterContext router;
+
+        int target;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            File routeFile = RouteTables.write(routes, mix);
+            target = RouteTables.target(routes, position);
+
+            MutablePropertyValues properties = new MutablePropertyValues();
+            properties.add("routeFiles", Collections.singletonList("file:" + routeFile.getAbsolutePath()));
+            properties.add("servletPrefix", "");
+            properties.add("automatonMatching", "automaton".equals(engine));
+            applicationContext = new StaticWebApplicationContext();
+            applicationContext.setServletContext(new MockServletContext());
+            applicationContext.registerSingleton("benchmarkController", BenchmarkController.class);
+            applicationContext.registerSingleton("handlerMapping", BenchmarkHandlerMapping.class, properties);
+            applicationContext.refresh();
+
+            handlerMapping = applicationContext.getBean(BenchmarkHandlerMapping.class);
+            router = Router.getDefaultContext();
+            if (router.getRoutes().size() != routes) {
+                throw new IllegalStateException("Expected " + routes + " routes, got " + router.getRoutes().size());
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            applicationContext.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class RequestState {
+
+        MockHttpServletRequest servletRequest;
+
+        HTTPRequestAdapter request;
+
+        @Setup(Level.Trial)
+        public void setUp(RouteTableState table) throws Exception {
+            servletRequest = RouteTables.request(table.mix, table.target);
+            request = HTTPRequestAdapter.parseRequest(servletRequest);
+
+            // check the request is routed as expected
+            boolean routed = table.router.findRoute(request) != Router.NO_ROUTE;
+            if (routed != table.target >= 0 || routed != (table.handlerMapping.getHandlerInternal(servletRequest) != null)) {
+                throw new IllegalStateException("Request " + request.path + " unexpectedly "
+                        + (routed ? "routed" : "not routed"));
+            }
+        }
+    }
+
+    @Benchmark
+    public Object route(RequestState state) {
+        try {
+            return Router.route(state.request);
+        } catch (NoRouteFoundException ex) {
+            return ex;
+        }
+    }
+
+    @Benchmark
+    public Object getHandlerInternal(RouteTableState table, RequestState state) throws Exception {
+        return table.handlerMapping.getHandlerInternal(state.servletRequest);
+    }
+}
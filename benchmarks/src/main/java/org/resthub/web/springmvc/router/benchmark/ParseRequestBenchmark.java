@@ -0,0 +1,47 @@
+package org.resthub.web.springmvc.router.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.resthub.web.springmvc.router.HTTPRequestAdapter;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+/**
+ * Throughput of the adaptation of servlet requests for the router.
+ *
+ * @author Brian Clozel
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseRequestBenchmark {
+
+    @Param({"static", "regex", "host", "qsparam"})
+    public String kind;
+
+    private MockHttpServletRequest servletRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        servletRequest = RouteTables.request(kind, 1);
+    }
+
+    @Benchmark
+    public HTTPRequestAdapter parseRequest() throws Exception {
+        return HTTPRequestAdapter.parseRequest(servletRequest);
+    }
+}
@@ -0,0 +1,184 @@
+package org.resthub.web.springmvc.router.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.log.NullLogChute;
+import org.apache.velocity.runtime.resource.loader.StringResourceLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.resthub.web.springmvc.router.HTTPRequestAdapter;
+import org.resthub.web.springmvc.router.ReverseHandle;
+import org.resthub.web.springmvc.router.Router;
+import org.resthub.web.springmvc.router.RouterContext;
+import org.resthub.web.springmvc.view.velocity.RouteDirective;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+/**
+ * Reverse routing throughput, from an action and its arguments to an URL.
+ *
+ * <p>Application tables are generated by {@link RouteTables}, and each
+ * benchmark reverses the action of the first, middle or last controller of
+ * the table, with path, host, static or query string arguments, with or
+ * without the reverse routing cache. Run with
+ * <code>-prof gc</code> to report the bytes allocated per call.
+ *
+ * @author Brian Clozel
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReverseRoutingBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ApplicationState {
+
+        @Param({"100", "3000"})
+        public int routes;
+
+        @Param({"path", "host", "static", "qsparam"})
+        public String kind;
+
+        @Param({"first", "middle", "last"})
+        public String position;
+
+        @Param({"0", "1000"})
+        public int reverseCacheSize;
+
+        String action;
+
+        Map<String, Object> args;
+
+        ReverseHandle handle;
+
+        VelocityEngine velocity;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            File routeFile = RouteTables.writeApplication(routes);
+            RouterContext router = new RouterContext();
+            router.setReverseCacheSize(reverseCacheSize);
+            router.load(Collections.<Resource>singletonList(new FileSystemResource(routeFile)), "");
+            Router.setDefaultContext(router);
+
+            action = RouteTables.action(kind, RouteTables.target(routes / 4, position));
+            String[] arg = RouteTables.args(kind);
+            args = new HashMap<String, Object>();
+            args.put(arg[0], arg[1]);
+            handle = router.handle(action);
+
+            velocity = new VelocityEngine();
+            velocity.setProperty(RuntimeConstants.RUNTIME_LOG_LOGSYSTEM_CLASS, NullLogChute.class.getName());
+            velocity.setProperty("userdirective", RouteDirective.class.getName());
+            velocity.setProperty(RuntimeConstants.RESOURCE_LOADER, "string");
+            velocity.setProperty("string.resource.loader.class", StringResourceLoader.class.getName());
+            velocity.init();
+            StringResourceLoader.getRepository().putStringResource("link.vm",
+                    "#route(\"" + action + "(" + arg[0] + ":'" + arg[1] + "')\")");
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PageState {
+
+        Map<String, Object> args;
+
+        Map<String, Object> argsWithRef;
+
+        Template template;
+
+        StringWriter writer = new StringWriter();
+
+        StringBuilder html = new StringBuilder(256);
+
+        @Setup(Level.Trial)
+        public void setUp(ApplicationState application) throws Exception {
+            // the request being rendered, read by getFullUrl and absolute URLs
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+            request.addHeader("host", "www.example.com");
+            HTTPRequestAdapter.parseRequest(request);
+
+            args = new HashMap<String, Object>(application.args);
+            argsWithRef = new HashMap<String, Object>(application.args);
+            argsWithRef.put("ref", "home");
+            template = application.velocity.getTemplate("link.vm");
+            if (Router.reverse(application.action, args).url.indexOf("/c") < 0) {
+                throw new IllegalStateException("Could not reverse " + application.action);
+            }
+        }
+    }
+
+    @Benchmark
+    public Object reverse(ApplicationState application, PageState page) {
+        return Router.reverse(application.action, page.args);
+    }
+
+    @Benchmark
+    public String handle(ApplicationState application, PageState page) {
+        return application.handle.url(page.args);
+    }
+
+    @Benchmark
+    public int handleAppend(ApplicationState application, PageState page) throws IOException {
+        page.html.setLength(0);
+        application.handle.appendUrl(page.html, page.args);
+        return page.html.length();
+    }
+
+    @Benchmark
+    public String getFullUrl(ApplicationState application, PageState page) {
+        return Router.getFullUrl(application.action, page.args);
+    }
+
+    @Benchmark
+    public Object add(ApplicationState application, PageState page) {
+        return Router.reverse(application.action, page.args).add("ref", "home");
+    }
+
+    @Benchmark
+    public Object remove(ApplicationState application, PageState page) {
+        return Router.reverse(application.action, page.argsWithRef).remove("ref");
+    }
+
+    @Benchmark
+    public Object absolute(ApplicationState application, PageState page) {
+        Router.ActionDefinition definition = Router.reverse(application.action, page.args);
+        definition.absolute();
+        return definition;
+    }
+
+    @Benchmark
+    public Object secure(ApplicationState application, PageState page) {
+        return Router.reverse(application.action, page.args).secure();
+    }
+
+    @Benchmark
+    public int routeDirective(PageState page) {
+        page.writer.getBuffer().setLength(0);
+        page.template.merge(new VelocityContext(), page.writer);
+        return page.writer.getBuffer().length();
+    }
+}
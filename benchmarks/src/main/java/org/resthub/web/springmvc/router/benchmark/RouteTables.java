@@ -0,0 +1,196 @@
+package org.resthub.web.springmvc.router.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.springframework.mock.web.MockHttpServletRequest;
+
+/**
+ * Generates route files and the requests they route.
+ *
+ * <p>Route <code>i</code> of a table is of one of these kinds:
+ * <ul>
+ * <li><code>static</code>: <code>GET /static/section{i}/items</code></li>
+ * <li><code>regex</code>: <code>GET /regex/section{i}/{&lt;[0-9]+&gt;id}</code></li>
+ * <li><code>host</code>: <code>GET host{i}.example.com/items/{id}</code>, all
+ * routes sharing the same path</li>
+ * <li><code>qsparam</code>: <code>GET /qs/items [page=p{i}]</code>, all
+ * routes sharing the same path</li>
+ * </ul>
+ * The <code>mixed</code> table cycles through the four kinds.
+ *
+ * <p>Application tables, used for reverse routing, declare four actions per
+ * controller <code>c</code>, each with its own kind of arguments:
+ * <ul>
+ * <li><code>path</code>: <code>GET /c{c}/items/{&lt;[0-9]+&gt;id} controller{c}.show</code></li>
+ * <li><code>host</code>: <code>GET {tenant}.example.com/c{c}/home controller{c}.home</code></li>
+ * <li><code>static</code>: <code>GET /c{c}/items controller{c}.list(page:'1')</code></li>
+ * <li><code>qsparam</code>: <code>GET /c{c}/search [q] controller{c}.search</code></li>
+ * </ul>
+ *
+ * @author Brian Clozel
+ */
+public final class RouteTables {
+
+    static final String[] KINDS = {"static", "regex", "host", "qsparam"};
+
+    static final String ACTION = "benchmarkController.handle";
+
+    private static final String HOST = "www.example.com";
+
+    private RouteTables() {
+    }
+
+    /**
+     * Write a route file.
+     *
+     * @param size number of routes
+     * @param mix kind of the routes, or <code>mixed</code>
+     * @return the route file, deleted on exit
+     */
+    public static File write(int size, String mix) throws IOException {
+        File file = File.createTempFile("benchmark-" + mix + "-" + size + "-", ".conf");
+        file.deleteOnExit();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            for (int i = 0; i < size; i++) {
+                writer.write(definition(kind(mix, i), i));
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    /**
+     * Write an application route file.
+     *
+     * @param size number of routes, rounded down to a multiple of four
+     * @return the route file, deleted on exit
+     */
+    public static File writeApplication(int size) throws IOException {
+        File file = File.createTempFile("benchmark-application-" + size + "-", ".conf");
+        file.deleteOnExit();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            for (int c = 0; c < size / 4; c++) {
+                writer.write("GET     /c" + c + "/items/{<[0-9]+>id}    controller" + c + ".show\n");
+                writer.write("GET     {tenant}.example.com/c" + c + "/home    controller" + c + ".home\n");
+                writer.write("GET     /c" + c + "/items    controller" + c + ".list(page:'1')\n");
+                writer.write("GET     /c" + c + "/search    [q]    controller" + c + ".search\n");
+            }
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    /**
+     * Action of an application route.
+     *
+     * @param kind <code>path</code>, <code>host</code>, <code>static</code>
+     * or <code>qsparam</code>
+     * @param controller index of the controller
+     */
+    public static String action(String kind, int controller) {
+        if ("path".equals(kind)) {
+            return "controller" + controller + ".show";
+        } else if ("host".equals(kind)) {
+            return "controller" + controller + ".home";
+        } else if ("static".equals(kind)) {
+            return "controller" + controller + ".list";
+        } else if ("qsparam".equals(kind)) {
+            return "controller" + controller + ".search";
+        }
+        throw new IllegalArgumentException("Unknown action kind " + kind);
+    }
+
+    /**
+     * Name and value of the argument reversing an application route.
+     */
+    public static String[] args(String kind) {
+        if ("path".equals(kind)) {
+            return new String[]{"id", "42"};
+        } else if ("host".equals(kind)) {
+            return new String[]{"tenant", "acme"};
+        } else if ("static".equals(kind)) {
+            return new String[]{"page", "1"};
+        }
+        return new String[]{"q", "caf\u00e9 & cr\u00e8me"};
+    }
+
+    /**
+     * Index of the route a request targets.
+     *
+     * @param position <code>first</code>, <code>middle</code>,
+     * <code>last</code> or <code>miss</code>
+     * @return the index, or -1 for a request no route matches
+     */
+    public static int target(int size, String position) {
+        if ("first".equals(position)) {
+            return 0;
+        } else if ("middle".equals(position)) {
+            return size / 2;
+        } else if ("last".equals(position)) {
+            return size - 1;
+        } else if ("miss".equals(position)) {
+            return -1;
+        }
+        throw new IllegalArgumentException("Unknown position " + position);
+    }
+
+    /**
+     * Build the servlet request matched by a route.
+     *
+     * @param index index of the route, -1 for a request no route matches
+     */
+    public static MockHttpServletRequest request(String mix, int index) {
+        if (index < 0) {
+            return request(HOST, "/missing/section/items", null);
+        }
+        String kind = kind(mix, index);
+        if ("static".equals(kind)) {
+            return request(HOST, "/static/section" + index + "/items", null);
+        } else if ("regex".equals(kind)) {
+            return request(HOST, "/regex/section" + index + "/42", null);
+        } else if ("host".equals(kind)) {
+            return request("host" + index + ".example.com", "/items/42", null);
+        }
+        return request(HOST, "/qs/items", "page=p" + index);
+    }
+
+    private static MockHttpServletRequest request(String host, String path, String queryString) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.addHeader("host", host);
+        request.addHeader("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8");
+        request.setQueryString(queryString);
+        return request;
+    }
+
+    private static String kind(String mix, int index) {
+        if ("mixed".equals(mix)) {
+            return KINDS[index % KINDS.length];
+        }
+        for (String kind : KINDS) {
+            if (kind.equals(mix)) {
+                return kind;
+            }
+        }
+        throw new IllegalArgumentException("Unknown route mix " + mix);
+    }
+
+    private static String definition(String kind, int index) {
+        if ("static".equals(kind)) {
+            return "GET     /static/section" + index + "/items    " + ACTION;
+        } else if ("regex".equals(kind)) {
+            return "GET     /regex/section" + index + "/{<[0-9]+>id}    " + ACTION;
+        } else if ("host".equals(kind)) {
+            return "GET     host" + index + ".example.com/items/{id}    " + ACTION;
+        }
+        return "GET     /qs/items    [page=p" + index + "]    " + ACTION;
+    }
+}
@@ -0,0 +1,189 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Set of chars described as sorted, disjoint ranges; parsed from the simple
+ * regex atoms used as route argument constraints (character classes and
+ * <code>\d</code>, <code>\w</code>, <code>\s</code> escapes).
+ *
+ * @author Brian Clozel
+ * @see org.resthub.web.springmvc.router.RouteAutomaton
+ */
+class CharClass {
+
+    /**
+     * Range bounds, as [low0, high0, low1, high1...] (inclusive)
+     */
+    final int[] ranges;
+
+    private CharClass(List<int[]> ranges) {
+        Collections.sort(ranges, new Comparator<int[]>() {
+
+            public int compare(int[] a, int[] b) {
+                return a[0] - b[0];
+            }
+        });
+        List<int[]> merged = new ArrayList<int[]>();
+        for (int[] range : ranges) {
+            int[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range[0] <= last[1] + 1) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(new int[]{range[0], range[1]});
+            }
+        }
+        this.ranges = new int[merged.size() * 2];
+        for (int i = 0; i < merged.size(); i++) {
+            this.ranges[2 * i] = merged.get(i)[0];
+            this.ranges[2 * i + 1] = merged.get(i)[1];
+        }
+    }
+
+    static CharClass of(char c) {
+        List<int[]> ranges = new ArrayList<int[]>(1);
+        ranges.add(new int[]{c, c});
+        return new CharClass(ranges);
+    }
+
+    boolean contains(char c) {
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (c < ranges[i]) {
+                return false;
+            }
+            if (c <= ranges[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether a char belongs to both classes.
+     */
+    boolean intersects(CharClass other) {
+        int i = 0;
+        int j = 0;
+        while (i < ranges.length && j < other.ranges.length) {
+            if (ranges[i + 1] < other.ranges[j]) {
+                i += 2;
+            } else if (other.ranges[j + 1] < ranges[i]) {
+                j += 2;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parse a single class atom: <code>[...]</code>, <code>[^...]</code>,
+     * <code>\d</code>, <code>\w</code> or <code>\s</code>.
+     *
+     * @param regex the regex
+     * @param start position of the atom in the regex
+     * @param end receives the position following the atom
+     * @return the parsed class, or null if the atom isn't supported
+     */
+    static CharClass parse(String regex, int start, int[] end) {
+        if (start >= regex.length()) {
+            return null;
+        }
+        List<int[]> ranges = new ArrayList<int[]>();
+        char c = regex.charAt(start);
+        if (c == '\\') {
+            if (start + 1 >= regex.length() || !addShorthand(regex.charAt(start + 1), ranges)) {
+                return null;
+            }
+            end[0] = start + 2;
+            return new CharClass(ranges);
+        }
+        if (c != '[') {
+            return null;
+        }
+        int i = start + 1;
+        boolean negated = i < regex.length() && regex.charAt(i) == '^';
+        if (negated) {
+            i++;
+        }
+        boolean first = true;
+        while (i < regex.length()) {
+            c = regex.charAt(i);
+            if (c == ']' && !first) {
+                end[0] = i + 1;
+                CharClass result = new CharClass(ranges);
+                return negated ? result.complement() : result;
+            }
+            first = false;
+            int low;
+            if (c == '\\') {
+                if (i + 1 >= regex.length()) {
+                    return null;
+                }
+                char e = regex.charAt(i + 1);
+                i += 2;
+                if (addShorthand(e, ranges)) {
+                    continue;
+                }
+                if (Character.isLetterOrDigit(e)) {
+                    return null;
+                }
+                low = e;
+            } else if (c == '[' || (c == '&' && i + 1 < regex.length() && regex.charAt(i + 1) == '&')) {
+                // nested classes and intersections are not supported
+                return null;
+            } else {
+                low = c;
+                i++;
+            }
+            int high = low;
+            if (i + 1 < regex.length() && regex.charAt(i) == '-' && regex.charAt(i + 1) != ']') {
+                high = regex.charAt(i + 1);
+                if (high == '\\' || high == '[' || high < low) {
+                    return null;
+                }
+                i += 2;
+            }
+            ranges.add(new int[]{low, high});
+        }
+        return null;
+    }
+
+    private static boolean addShorthand(char c, List<int[]> ranges) {
+        switch (c) {
+            case 'd':
+                ranges.add(new int[]{'0', '9'});
+                return true;
+            case 'w':
+                ranges.add(new int[]{'a', 'z'});
+                ranges.add(new int[]{'A', 'Z'});
+                ranges.add(new int[]{'0', '9'});
+                ranges.add(new int[]{'_', '_'});
+                return true;
+            case 's':
+                ranges.add(new int[]{'\t', '\r'});
+                ranges.add(new int[]{' ', ' '});
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private CharClass complement() {
+        List<int[]> result = new ArrayList<int[]>();
+        int next = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > next) {
+                result.add(new int[]{next, ranges[i] - 1});
+            }
+            next = ranges[i + 1] + 1;
+        }
+        if (next <= Character.MAX_VALUE) {
+            result.add(new int[]{next, Character.MAX_VALUE});
+        }
+        return new CharClass(result);
+    }
+}
@@ -0,0 +1,218 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Partitions of the route list by request host, used by the RouteIndex to
+ * only match a request against the routes that may serve its host.
+ *
+ * <p>Routes are sorted by their host part:
+ * <ul>
+ * <li>routes without host serve every host</li>
+ * <li>literal hosts, such as <code>myhost.com</code>, are stored in a hash
+ * map</li>
+ * <li>wildcard hosts, such as <code>{subdomain}.domain.org</code>, are stored
+ * in a trie of reversed host labels ("org", then "domain")</li>
+ * <li>other host patterns may serve any host, like routes without host</li>
+ * </ul>
+ *
+ * <p>A partition is the set of routes serving a given group of hosts: a
+ * literal host, the hosts ending with a given wildcard suffix, or any other
+ * host. Partition 0 holds every route, for requests without host; the index
+ * only has this partition if no route has a host part.
+ *
+ * @author Brian Clozel
+ * @see org.resthub.web.springmvc.router.RouteIndex
+ */
+class HostIndex {
+
+    private final List<BitSet> partitions = new ArrayList<BitSet>();
+
+    private final Map<String, Integer> literalHosts = new HashMap<String, Integer>();
+
+    private final Label root = new Label();
+
+    /**
+     * Partition of the hosts matching no literal host nor wildcard suffix
+     */
+    private final int otherHosts;
+
+    HostIndex(List<Router.Route> routes) {
+        BitSet all = new BitSet();
+        all.set(0, routes.size());
+        partitions.add(all);
+
+        BitSet anyHost = new BitSet();
+        Map<String, BitSet> literals = new HashMap<String, BitSet>();
+        for (int i = 0; i < routes.size(); i++) {
+            String host = routes.get(i).host;
+            if (host == null || host.length() == 0) {
+                anyHost.set(i);
+            } else if (routes.get(i).hasLiteralHost()) {
+                BitSet bits = literals.get(host);
+                if (bits == null) {
+                    bits = new BitSet();
+                    literals.put(host, bits);
+                }
+                bits.set(i);
+            } else {
+                String suffix = wildcardSuffix(host);
+                if (suffix != null) {
+                    label(suffix).routes.set(i);
+                } else {
+                    anyHost.set(i);
+                }
+            }
+        }
+        if (literals.isEmpty() && root.children.isEmpty()) {
+            otherHosts = 0;
+            return;
+        }
+
+        otherHosts = partitions.size();
+        partitions.add(anyHost);
+        addWildcardPartitions(root, anyHost);
+        for (Map.Entry<String, BitSet> literal : literals.entrySet()) {
+            BitSet bits = (BitSet) partitionFor(literal.getKey()).clone();
+            bits.or(literal.getValue());
+            literalHosts.put(literal.getKey(), partitions.size());
+            partitions.add(bits);
+        }
+    }
+
+    /**
+     * Number of partitions
+     */
+    int size() {
+        return partitions.size();
+    }
+
+    /**
+     * Indexes of the routes of a partition
+     */
+    BitSet routes(int partition) {
+        return partitions.get(partition);
+    }
+
+    /**
+     * Get the partition serving the given host.
+     *
+     * @param host the request host; null for any host
+     */
+    int partition(String host) {
+        if (host == null) {
+            return 0;
+        }
+        if (!literalHosts.isEmpty()) {
+            Integer literal = literalHosts.get(host);
+            if (literal != null) {
+                return literal;
+            }
+        }
+        return wildcardPartition(host);
+    }
+
+    /**
+     * Get the domain suffix of a wildcard host: a single argument followed by
+     * a literal domain, as in <code>{subdomain}.domain.org</code>.
+     *
+     * @return the suffix without its leading '.', or null if the host isn't a
+     * wildcard host
+     */
+    static String wildcardSuffix(String host) {
+        int close = host.indexOf('}');
+        if (!host.startsWith("{") || close < 0 || host.indexOf('.') < close
+                || !host.startsWith(".", close + 1)) {
+            return null;
+        }
+        String suffix = host.substring(close + 2);
+        if (suffix.length() == 0 || suffix.startsWith(".") || suffix.endsWith(".")
+                || !RouteTrie.isLiteral(suffix.replace(".", "")) || suffix.indexOf('{') >= 0) {
+            return null;
+        }
+        return suffix;
+    }
+
+    private BitSet partitionFor(String host) {
+        return partitions.get(wildcardPartition(host));
+    }
+
+    /**
+     * Find the longest wildcard suffix the host ends with, walking host
+     * labels from the last one.
+     */
+    private int wildcardPartition(String host) {
+        int partition = otherHosts;
+        Label label = root;
+        int end = host.length();
+        while (!label.children.isEmpty()) {
+            int dot = host.lastIndexOf('.', end - 1);
+            // "{subdomain}.domain.org" needs a '.' before "domain.org"
+            if (dot < 0) {
+                break;
+            }
+            label = label.children.get(host.substring(dot + 1, end));
+            if (label == null) {
+                break;
+            }
+            if (label.partition >= 0) {
+                partition = label.partition;
+            }
+            end = dot;
+        }
+        return partition;
+    }
+
+    private Label label(String suffix) {
+        Label label = root;
+        int end = suffix.length();
+        while (end > 0) {
+            int dot = suffix.lastIndexOf('.', end - 1);
+            String name = suffix.substring(dot + 1, end);
+            Label child = label.children.get(name);
+            if (child == null) {
+                child = new Label();
+                label.children.put(name, child);
+            }
+            label = child;
+            end = dot < 0 ? 0 : dot;
+        }
+        return label;
+    }
+
+    /**
+     * Give a partition to every suffix holding wildcard routes: routes of the
+     * shorter suffixes also serve its hosts.
+     */
+    private void addWildcardPartitions(Label label, BitSet inherited) {
+        BitSet bits = inherited;
+        if (!label.routes.isEmpty()) {
+            bits = (BitSet) inherited.clone();
+            bits.or(label.routes);
+            label.partition = partitions.size();
+            partitions.add(bits);
+        }
+        for (Label child : label.children.values()) {
+            addWildcardPartitions(child, bits);
+        }
+    }
+
+    /**
+     * Node of the reversed host labels trie
+     */
+    private static class Label {
+
+        final Map<String, Label> children = new HashMap<String, Label>();
+
+        /**
+         * Wildcard routes for this suffix
+         */
+        final BitSet routes = new BitSet();
+
+        int partition = -1;
+    }
+}
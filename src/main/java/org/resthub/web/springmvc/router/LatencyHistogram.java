@@ -0,0 +1,74 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations, with power of two buckets: bucket
+ * <code>i</code> counts durations in [2^(i-1), 2^i) nanoseconds.
+ *
+ * @author Brian Clozel
+ * @see org.resthub.web.springmvc.router.RouterMetrics
+ */
+class LatencyHistogram {
+
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+    private final StripedCounter total = new StripedCounter(true);
+
+    void record(long nanos) {
+        int bucket = nanos <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(nanos);
+        buckets.incrementAndGet(Math.min(bucket, 63));
+        total.add(nanos);
+    }
+
+    long count() {
+        long count = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Mean duration in nanoseconds, 0 if nothing was recorded
+     */
+    double mean() {
+        long count = count();
+        return count == 0 ? 0 : (double) total.sum() / count;
+    }
+
+    /**
+     * Get an upper bound of the given percentile: durations are only known
+     * to their bucket.
+     *
+     * @param percentile between 0 and 100
+     * @return the duration in nanoseconds, 0 if nothing was recorded
+     */
+    long percentile(double percentile) {
+        long[] counts = new long[buckets.length()];
+        long count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            count += counts[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                return i == 0 ? 0 : (i == 63 ? Long.MAX_VALUE : (1L << i) - 1);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+        total.reset();
+    }
+}
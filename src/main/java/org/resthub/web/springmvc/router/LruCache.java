@@ -0,0 +1,158 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-bounded cache with least-recently-used eviction, used by the Router to
+ * memoize routing results.
+ *
+ * <p>Entries are spread over several independently locked segments, each one
+ * evicting its own least recently used entries, so concurrent requests rarely
+ * contend on the same lock. The segment capacities add up to the maximum
+ * size; small caches use fewer segments.
+ *
+ * @author Brian Clozel
+ * @see org.resthub.web.springmvc.router.Router
+ */
+public class LruCache<K, V> {
+
+    /**
+     * Maximum number of segments, a power of two
+     */
+    private static final int SEGMENTS = 16;
+
+    private final Segment<K, V>[] segments;
+
+    private final int maxSize;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    LruCache(int maxSize) {
+        this.maxSize = maxSize;
+        // at least one entry per segment, a power of two segments
+        int count = Integer.highestOneBit(Math.max(1, Math.min(SEGMENTS, maxSize)));
+        @SuppressWarnings("unchecked")
+        Segment<K, V>[] segments = (Segment<K, V>[]) new Segment<?, ?>[count];
+        for (int i = 0; i < count; i++) {
+            int capacity = maxSize / count + (i < maxSize % count ? 1 : 0);
+            segments[i] = new Segment<K, V>(Math.max(1, capacity), evictions);
+        }
+        this.segments = segments;
+    }
+
+    V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        V value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return value;
+    }
+
+    void put(K key, V value) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, value);
+        }
+    }
+
+    /**
+     * Remove all entries; statistics are kept.
+     */
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return segments[h & (segments.length - 1)];
+    }
+
+    /**
+     * Maximum number of entries
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Current number of entries
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Ratio of lookups that found an entry, 0 if there was no lookup
+     */
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return "LruCache[size=" + size() + ", maxSize=" + maxSize + ", hits=" + hits
+                + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+
+    private static class Segment<K, V> extends LinkedHashMap<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        private final AtomicLong evictions;
+
+        Segment(int capacity, AtomicLong evictions) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            if (size() > capacity) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
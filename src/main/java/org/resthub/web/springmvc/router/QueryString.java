@@ -0,0 +1,176 @@
+package org.resthub.web.springmvc.router;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.List;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.resthub.web.springmvc.router.exceptions.RouteFileParsingException;
+
+/**
+ * Read-only view over a raw request querystring, used by the Router to check
+ * route querystring params.
+ *
+ * <p>Nothing is parsed up front: each lookup scans the raw string and only
+ * decodes the parameter names that may equal the requested key, and the value
+ * of the parameter found. Parameters are read the way
+ * {@link URLEncodedUtils#parse} reads them: "key" and "key=" both have a null
+ * value, and a parameter holding more than one '=' is invalid.
+ *
+ * @author Brian Clozel
+ * @see org.resthub.web.springmvc.router.Router
+ */
+class QueryString {
+
+    private static final String METHOD_OVERRIDE = "x-http-method-override=";
+
+    private static final String[] OVERRIDE_METHODS = {"GET", "PUT", "POST", "DELETE"};
+
+    private final String raw;
+
+    /**
+     * @param raw the querystring, without the leading '?'; may be null
+     */
+    QueryString(String raw) {
+        this.raw = raw == null ? "" : raw;
+    }
+
+    /**
+     * Wrap already parsed parameters.
+     *
+     * @return the querystring view, null if params is null
+     */
+    static QueryString of(List<NameValuePair> params) {
+        return params == null ? null : new QueryString(URLEncodedUtils.format(params, "utf-8"));
+    }
+
+    /**
+     * Find the first parameter with the given name.
+     *
+     * @return the parameter position, to be given to {@link #value(int)}, or
+     * -1 if the querystring has no such parameter
+     */
+    int find(String key) {
+        int start = 0;
+        while (start <= raw.length()) {
+            int end = raw.indexOf('&', start);
+            if (end < 0) {
+                end = raw.length();
+            }
+            if (end > start || end < raw.length()) {
+                if (nameEquals(key, start, nameEnd(start, end))) {
+                    return start;
+                }
+            }
+            start = end + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the decoded value of the parameter at the given position.
+     *
+     * @param param a position returned by {@link #find(String)}
+     * @return the value, null if the parameter has none
+     */
+    String value(int param) {
+        int end = raw.indexOf('&', param);
+        if (end < 0) {
+            end = raw.length();
+        }
+        int nameEnd = nameEnd(param, end);
+        int valueEnd = trimmedEnd(param, end);
+        if (nameEnd >= valueEnd) {
+            return null;
+        }
+        return decode(raw.substring(nameEnd + 1, valueEnd));
+    }
+
+    @Override
+    public String toString() {
+        return raw;
+    }
+
+    /**
+     * Find the method given by a <code>x-http-method-override</code>
+     * parameter; if the querystring holds several of them, the last one wins.
+     *
+     * @return the overriding method, or null if none
+     */
+    static String methodOverride(String querystring) {
+        if (querystring == null) {
+            return null;
+        }
+        int from = querystring.length();
+        while (from >= 0) {
+            int position = querystring.lastIndexOf(METHOD_OVERRIDE, from);
+            if (position < 0) {
+                return null;
+            }
+            int methodStart = position + METHOD_OVERRIDE.length();
+            for (String method : OVERRIDE_METHODS) {
+                if (querystring.startsWith(method, methodStart)) {
+                    return method;
+                }
+            }
+            from = position - 1;
+        }
+        return null;
+    }
+
+    /**
+     * Get the end of the name of the parameter in [start, end), checking
+     * that the parameter is valid.
+     */
+    private int nameEnd(int start, int end) {
+        int trimmedEnd = trimmedEnd(start, end);
+        if (trimmedEnd == start && end > start) {
+            throw badParameter(start, end);
+        }
+        int separator = raw.indexOf('=', start);
+        if (separator < 0 || separator >= trimmedEnd) {
+            return trimmedEnd;
+        }
+        int other = raw.indexOf('=', separator + 1);
+        if (other >= 0 && other < trimmedEnd) {
+            throw badParameter(start, end);
+        }
+        return separator;
+    }
+
+    /**
+     * Get the end of the parameter in [start, end), ignoring trailing '='
+     */
+    private int trimmedEnd(int start, int end) {
+        while (end > start && raw.charAt(end - 1) == '=') {
+            end--;
+        }
+        return end;
+    }
+
+    private boolean nameEquals(String key, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = raw.charAt(i);
+            if (c == '%' || c == '+') {
+                return key.equals(decode(raw.substring(start, end)));
+            }
+        }
+        return end - start == key.length() && raw.regionMatches(start, key, 0, key.length());
+    }
+
+    private static String decode(String encoded) {
+        try {
+            return URLDecoder.decode(encoded, "utf-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new RouteFileParsingException("RouteFile exception while parsing querystring", ex);
+        } catch (IllegalArgumentException ex) {
+            throw new RouteFileParsingException("RouteFile exception while parsing querystring", ex);
+        }
+    }
+
+    private RouteFileParsingException badParameter(int start, int end) {
+        return new RouteFileParsingException("RouteFile exception while parsing querystring",
+                new IllegalArgumentException("bad parameter: " + raw.substring(start, end)));
+    }
+}
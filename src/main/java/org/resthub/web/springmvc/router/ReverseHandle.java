@@ -0,0 +1,310 @@
+package org.resthub.web.springmvc.router;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jregex.Matcher;
+
+import org.resthub.web.springmvc.router.Router.Route;
+import org.resthub.web.springmvc.router.exceptions.NoHandlerFoundException;
+
+/**
+ * Action resolved once for reverse routing, to generate many URLs.
+ *
+ * <p>The routes that may reverse the action, and the arguments their action
+ * pattern reads from it, are resolved when the handle is created: generating
+ * an URL only checks the arguments of these routes, in priority order, and
+ * writes the path and query string of the first matching one. The result is
+ * the URL of <code>Router.reverse(action, args)</code>, but the given
+ * arguments are never changed.
+ *
+ * <p>A handle is bound to the route table of its context; it resolves its
+ * action again when routes are reloaded. Handles are thread safe and meant
+ * to be kept, e.g. in a controller field:
+ *
+ * <pre>
+ * ReverseHandle showUser = Router.handle("userController.showUser");
+ * for (User user : users) {
+ *     showUser.appendUrl(out, user.getId());
+ * }
+ * </pre>
+ *
+ * @author Brian Clozel
+ * @see org.resthub.web.springmvc.router.Router#handle(String)
+ */
+public class ReverseHandle {
+
+    private final RouterContext context;
+
+    private final String action;
+
+    private volatile Resolution resolution;
+
+    /**
+     * @throws NoHandlerFoundException if no route reverses the action
+     */
+    ReverseHandle(RouterContext context, String action) {
+        this.context = context;
+        this.action = action;
+        this.resolution = resolve(context.routeTable());
+        if (resolution.candidates.length == 0) {
+            throw new NoHandlerFoundException(action, new HashMap<String, Object>());
+        }
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    /**
+     * Get the names of the positional values, the arguments of the route
+     * with the highest priority for this action (host argument first, then
+     * path arguments), except the ones read from the action.
+     */
+    public List<String> getArgNames() {
+        return resolution().argNames;
+    }
+
+    /**
+     * Get the URL of the action, path and query string, as
+     * {@link Router.ActionDefinition#url}.
+     *
+     * @param values values of the arguments named by {@link #getArgNames()},
+     * in that order; null or missing values are left out
+     * @throws NoHandlerFoundException if no route reverses these values
+     */
+    public String url(Object... values) {
+        Map<String, Object> args = positionalArgs(values);
+        StringBuilder url = new StringBuilder(64);
+        if (!write(url, args, true)) {
+            throw new NoHandlerFoundException(action, args);
+        }
+        return url.toString();
+    }
+
+    /**
+     * Get the URL of the action, without throwing an exception if no route
+     * reverses the given values.
+     *
+     * @return the URL, or null if no route reverses these values
+     * @see #url(Object...)
+     */
+    public String tryUrl(Object... values) {
+        StringBuilder url = new StringBuilder(64);
+        return write(url, positionalArgs(values), true) ? url.toString() : null;
+    }
+
+    /**
+     * Get the URL of the action with the given arguments.
+     *
+     * @throws NoHandlerFoundException if no route reverses these arguments
+     */
+    public String url(Map<String, Object> args) {
+        String url = tryUrl(args);
+        if (url == null) {
+            throw new NoHandlerFoundException(action, args);
+        }
+        return url;
+    }
+
+    /**
+     * Get the URL of the action with the given arguments, without throwing
+     * an exception if no route reverses them.
+     *
+     * @return the URL, or null if no route reverses these arguments
+     */
+    public String tryUrl(Map<String, Object> args) {
+        StringBuilder url = new StringBuilder(64);
+        return write(url, args, false) ? url.toString() : null;
+    }
+
+    /**
+     * Append the URL of the action to the given output.
+     *
+     * @see #url(Object...)
+     */
+    public void appendUrl(Appendable out, Object... values) throws IOException {
+        Map<String, Object> args = positionalArgs(values);
+        if (!append(out, args, true)) {
+            throw new NoHandlerFoundException(action, args);
+        }
+    }
+
+    /**
+     * Append the URL of the action with the given arguments to the given
+     * output.
+     *
+     * @see #url(Map)
+     */
+    public void appendUrl(Appendable out, Map<String, Object> args) throws IOException {
+        if (!append(out, args, false)) {
+            throw new NoHandlerFoundException(action, args);
+        }
+    }
+
+    /**
+     * Append the URL of the action to the given output, without throwing an
+     * exception if no route reverses the given values.
+     *
+     * @return whether the URL was appended
+     * @see #url(Object...)
+     */
+    public boolean tryAppendUrl(Appendable out, Object... values) throws IOException {
+        return append(out, positionalArgs(values), true);
+    }
+
+    /**
+     * Append the URL of the action with the given arguments to the given
+     * output, without throwing an exception if no route reverses them.
+     *
+     * @return whether the URL was appended
+     */
+    public boolean tryAppendUrl(Appendable out, Map<String, Object> args) throws IOException {
+        return append(out, args, false);
+    }
+
+    @Override
+    public String toString() {
+        return "ReverseHandle[" + action + "]";
+    }
+
+    private boolean append(Appendable out, Map<String, Object> args, boolean owned) throws IOException {
+        if (out instanceof StringBuilder) {
+            return write((StringBuilder) out, args, owned);
+        }
+        StringBuilder url = new StringBuilder(64);
+        if (!write(url, args, owned)) {
+            return false;
+        }
+        out.append(url);
+        return true;
+    }
+
+    private Map<String, Object> positionalArgs(Object[] values) {
+        List<String> names = resolution().argNames;
+        if (values.length > names.size()) {
+            throw new IllegalArgumentException("Action " + action + " takes at most " + names.size()
+                    + " values " + names + ", got " + values.length);
+        }
+        Map<String, Object> args = new HashMap<String, Object>(Math.max(4, values.length * 2));
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                args.put(names.get(i), values[i]);
+            }
+        }
+        return args;
+    }
+
+    /**
+     * Write the URL of the first route reversing the given arguments, like
+     * Router.reverse does.
+     *
+     * @param owned whether the arguments may be changed
+     * @return whether a route reverses the arguments
+     */
+    private boolean write(StringBuilder url, Map<String, Object> args, boolean owned) {
+        Resolution current = resolution();
+        if (current.writesArgs && !owned) {
+            args = new HashMap<String, Object>(args);
+        }
+        for (Candidate candidate : current.candidates) {
+            if (!candidate.actionArgs.isEmpty()) {
+                args.putAll(candidate.actionArgs);
+            }
+            if (Router.reverses(candidate.route, args)) {
+                Router.appendReverseUrl(candidate.route, args, url);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Resolution resolution() {
+        Resolution current = resolution;
+        RouteTable table = context.routeTable();
+        if (current.table != table) {
+            current = resolve(table);
+            resolution = current;
+        }
+        return current;
+    }
+
+    private Resolution resolve(RouteTable table) {
+        List<Candidate> candidates = new ArrayList<Candidate>(2);
+        boolean writesArgs = false;
+        for (Route route : table.reverseIndex().candidates(action)) {
+            if (route.actionPattern == null) {
+                continue;
+            }
+            Matcher matcher = route.actionPattern.matcher(action);
+            if (!matcher.matches()) {
+                continue;
+            }
+            Map<String, String> actionArgs = new HashMap<String, String>(4);
+            for (String group : route.actionArgs) {
+                String v = matcher.group(group);
+                if (v != null) {
+                    actionArgs.put(group, v.toLowerCase());
+                }
+            }
+            boolean hostDefaults = false;
+            for (Route.Arg arg : route.args) {
+                hostDefaults |= Router.isHostDefault(route, arg);
+            }
+            writesArgs |= hostDefaults || !actionArgs.isEmpty();
+            candidates.add(new Candidate(route, actionArgs));
+        }
+        // reloaded routes may not reverse the action anymore
+        List<String> argNames = new ArrayList<String>();
+        if (!candidates.isEmpty()) {
+            Route first = candidates.get(0).route;
+            for (Route.Arg arg : first.args) {
+                if (!first.actionArgs.contains(arg.name)) {
+                    argNames.add(arg.name);
+                }
+            }
+        }
+        return new Resolution(table, candidates.toArray(new Candidate[candidates.size()]),
+                Collections.unmodifiableList(argNames), writesArgs);
+    }
+
+    /**
+     * Routes reversing the action in a route table
+     */
+    private static class Resolution {
+
+        final RouteTable table;
+        final Candidate[] candidates;
+        final List<String> argNames;
+        /**
+         * Whether reversing adds arguments, read from the action or empty
+         * host arguments
+         */
+        final boolean writesArgs;
+
+        Resolution(RouteTable table, Candidate[] candidates, List<String> argNames, boolean writesArgs) {
+            this.table = table;
+            this.candidates = candidates;
+            this.argNames = argNames;
+            this.writesArgs = writesArgs;
+        }
+    }
+
+    /**
+     * Route matching the action, with the arguments read from the action
+     */
+    private static class Candidate {
+
+        final Route route;
+        final Map<String, String> actionArgs;
+
+        Candidate(Route route, Map<String, String> actionArgs) {
+            this.route = route;
+            this.actionArgs = actionArgs;
+        }
+    }
+}
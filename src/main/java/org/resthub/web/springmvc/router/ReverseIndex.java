@@ -0,0 +1,143 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.resthub.web.springmvc.router.Router.Route;
+
+/**
+ * Candidate routes of reverse routing, by action.
+ *
+ * <p>Most routes declare a literal action, such as
+ * <code>userController.showUser</code>, only matched by that action in any
+ * case: these routes are indexed by their case-folded action. Routes whose
+ * action holds <code>{placeholders}</code>, or characters read as a regex,
+ * are kept in a fallback list and are candidates of every action. Reverse
+ * routing then only evaluates the action pattern of routes that can produce
+ * the action, in priority order.
+ *
+ * @author Brian Clozel
+ * @see org.resthub.web.springmvc.router.Router#reverse(String, Map)
+ */
+class ReverseIndex {
+
+    /**
+     * Candidates by case-folded literal action, fallback routes included
+     */
+    private final Map<String, List<Route>> routesByAction = new HashMap<String, List<Route>>();
+
+    /**
+     * Routes with a non literal action, in priority order
+     */
+    private final List<Route> fallbackRoutes;
+
+    /**
+     * Case-folded literal actions with a candidate reversed according to the
+     * current request format
+     */
+    private final Set<String> formatActions = new HashSet<String>();
+
+    private final boolean fallbackFormat;
+
+    /**
+     * @param routes routes in priority order
+     */
+    ReverseIndex(List<Route> routes) {
+        Map<String, List<Integer>> positions = new HashMap<String, List<Integer>>();
+        List<Integer> fallbackPositions = new ArrayList<Integer>();
+        for (int i = 0; i < routes.size(); i++) {
+            Route route = routes.get(i);
+            if (route.actionPattern == null) {
+                continue;
+            }
+            if (isLiteral(route.action)) {
+                String key = fold(route.action);
+                List<Integer> actionPositions = positions.get(key);
+                if (actionPositions == null) {
+                    actionPositions = new ArrayList<Integer>(2);
+                    positions.put(key, actionPositions);
+                }
+                actionPositions.add(i);
+            } else {
+                fallbackPositions.add(i);
+            }
+        }
+        for (Map.Entry<String, List<Integer>> entry : positions.entrySet()) {
+            List<Route> candidates = merge(routes, entry.getValue(), fallbackPositions);
+            routesByAction.put(entry.getKey(), candidates);
+            if (hasFormat(candidates)) {
+                formatActions.add(entry.getKey());
+            }
+        }
+        this.fallbackRoutes = merge(routes, Collections.<Integer>emptyList(), fallbackPositions);
+        this.fallbackFormat = hasFormat(fallbackRoutes);
+    }
+
+    /**
+     * Get the routes that may reverse the given action, in priority order.
+     */
+    List<Route> candidates(String action) {
+        List<Route> candidates = routesByAction.get(fold(action));
+        return candidates != null ? candidates : fallbackRoutes;
+    }
+
+    /**
+     * Check whether reversing the given action may depend on the format of
+     * the current request, read by routes with a <code>format</code> static
+     * arg.
+     */
+    boolean dependsOnFormat(String action) {
+        String key = fold(action);
+        return routesByAction.containsKey(key) ? formatActions.contains(key) : fallbackFormat;
+    }
+
+    private static boolean hasFormat(List<Route> routes) {
+        for (Route route : routes) {
+            if (route.staticArgs.containsKey("format")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether the action pattern of a route only matches its action,
+     * ignoring case: "." is the only char escaped by the pattern.
+     */
+    static boolean isLiteral(String action) {
+        for (int i = 0; i < action.length(); i++) {
+            char c = action.charAt(i);
+            if (!(c == '.' || c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9'))) {
+                return false;
+            }
+        }
+        return action.length() > 0;
+    }
+
+    private static String fold(String action) {
+        return action.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Merge two sorted lists of route positions into a read-only route list.
+     */
+    private static List<Route> merge(List<Route> routes, List<Integer> first, List<Integer> second) {
+        List<Route> merged = new ArrayList<Route>(first.size() + second.size());
+        int i = 0;
+        int j = 0;
+        while (i < first.size() || j < second.size()) {
+            if (j == second.size() || (i < first.size() && first.get(i) < second.get(j))) {
+                merged.add(routes.get(first.get(i++)));
+            } else {
+                merged.add(routes.get(second.get(j++)));
+            }
+        }
+        return Collections.unmodifiableList(merged);
+    }
+}
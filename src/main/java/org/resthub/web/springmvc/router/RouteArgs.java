@@ -0,0 +1,198 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Arguments of a matched route: path arguments, host argument and static
+ * arguments.
+ *
+ * <p>Only the offsets of the path arguments in the request path are kept:
+ * the argument names and the way each value is resolved are computed once per
+ * route (see {@link Router.Route#compute()}), and values are only extracted
+ * when read. The arguments are copied to a HashMap on the first change, so
+ * that applications may still add or remove request arguments.
+ *
+ * @author Brian Clozel
+ * @see org.resthub.web.springmvc.router.Router.Route
+ */
+class RouteArgs extends AbstractMap<String, String> {
+
+    private static final int[] NO_OFFSETS = new int[0];
+
+    private final Router.Route route;
+
+    private final String path;
+
+    /**
+     * Start and end offsets of each path argument in path, -1 if the argument
+     * wasn't captured
+     */
+    private final int[] offsets;
+
+    private final String domain;
+
+    private String[] values;
+
+    private Set<Entry<String, String>> entrySet;
+
+    /**
+     * Arguments changed by the application, null until the first change
+     */
+    private Map<String, String> changed;
+
+    RouteArgs(Router.Route route, String path, int[] offsets, String domain) {
+        this.route = route;
+        this.path = path;
+        this.offsets = offsets;
+        this.domain = domain;
+    }
+
+    /**
+     * Arguments of a route without path nor host argument: its static
+     * arguments.
+     */
+    RouteArgs(Router.Route route) {
+        this(route, null, NO_OFFSETS, null);
+    }
+
+    /**
+     * Get unchanged arguments of the same match for another request, e.g.
+     * from the routing cache, without extracting the values again.
+     */
+    RouteArgs copy() {
+        return new RouteArgs(route, path, offsets, domain);
+    }
+
+    @Override
+    public String get(Object key) {
+        if (changed != null) {
+            return changed.get(key);
+        }
+        int slot = slot(key);
+        return slot < 0 ? null : value(slot);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (changed != null) {
+            return changed.containsKey(key);
+        }
+        return slot(key) >= 0;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        if (changed != null) {
+            return changed.entrySet();
+        }
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    @Override
+    public String put(String key, String value) {
+        return changed().put(key, value);
+    }
+
+    @Override
+    public String remove(Object key) {
+        return changed().remove(key);
+    }
+
+    @Override
+    public void clear() {
+        changed().clear();
+    }
+
+    private Map<String, String> changed() {
+        if (changed == null) {
+            changed = new HashMap<String, String>(this);
+        }
+        return changed;
+    }
+
+    private int slot(Object key) {
+        String[] names = route.argNames;
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(key)) {
+                return isPresent(i) ? i : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The host argument is only set if the request host is known
+     */
+    private boolean isPresent(int slot) {
+        return domain != null || route.argSources[slot] != Router.Route.HOST_ARG;
+    }
+
+    private String value(int slot) {
+        if (values == null) {
+            values = new String[route.argNames.length];
+        }
+        String value = values[slot];
+        if (value == null) {
+            int source = route.argSources[slot];
+            if (source == Router.Route.HOST_ARG) {
+                // Parse the hostname and get only the part we are interested in
+                value = domain.replace(route.hostPrefix, "");
+            } else if (source == Router.Route.STATIC_ARG) {
+                value = route.argStaticValues[slot];
+            } else if (offsets[2 * source] >= 0) {
+                value = path.substring(offsets[2 * source], offsets[2 * source + 1]);
+            }
+            values[slot] = value;
+        }
+        return value;
+    }
+
+    private class EntrySet extends AbstractSet<Entry<String, String>> {
+
+        @Override
+        public Iterator<Entry<String, String>> iterator() {
+            return new Iterator<Entry<String, String>>() {
+
+                private int next = advance(0);
+
+                private int advance(int slot) {
+                    while (slot < route.argNames.length && !isPresent(slot)) {
+                        slot++;
+                    }
+                    return slot;
+                }
+
+                public boolean hasNext() {
+                    return next < route.argNames.length;
+                }
+
+                public Entry<String, String> next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    int slot = next;
+                    next = advance(next + 1);
+                    return new SimpleImmutableEntry<String, String>(route.argNames[slot], value(slot));
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return domain != null || route.hostSlot < 0 ? route.argNames.length : route.argNames.length - 1;
+        }
+    }
+}
@@ -0,0 +1,450 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deterministic automaton merging the path patterns of a route table.
+ *
+ * <p>Route paths made of literal chars, arguments constrained by a single
+ * quantified character class (such as <code>{id}</code> or
+ * <code>{&lt;[0-9]+&gt;id}</code>) and an optional trailing slash are compiled
+ * to a single DFA. Each accepting state is tagged with the routes it accepts,
+ * in priority order. A single pass over the request path gives the routes
+ * whose path matches; capture offsets of a route are then read with a linear
+ * scan, since compiled paths are unambiguous (an argument is always followed by
+ * the end of the path or by a char it can't match).
+ *
+ * <p>Other routes are not compiled, and are reported as fallback routes to be
+ * matched with their own regex.
+ *
+ * @author Brian Clozel
+ * @see org.resthub.web.springmvc.router.RouteIndex
+ */
+class RouteAutomaton {
+
+    private static final Logger logger = LoggerFactory.getLogger(RouteAutomaton.class);
+
+    /**
+     * Maximum number of DFA states; tables that need more are not compiled
+     */
+    static final int MAX_STATES = 20000;
+
+    private static final int[] NONE = new int[0];
+
+    private static final int LITERAL = 0;
+
+    private static final int SLOT = 1;
+
+    private static final int OPTIONAL = 2;
+
+    /**
+     * Compiled path of each route, null for fallback routes
+     */
+    private final Program[] programs;
+
+    /**
+     * Routes that are not compiled in the automaton
+     */
+    final BitSet fallbackRoutes = new BitSet();
+
+    /**
+     * First char of each alphabet interval
+     */
+    private int[] boundaries;
+
+    private final int[] asciiIntervals = new int[128];
+
+    /**
+     * DFA transitions, as [state][interval] -> next state, or -1
+     */
+    private int[][] transitions;
+
+    /**
+     * Routes accepted in each DFA state, in priority order
+     */
+    private int[][] accepting;
+
+    private RouteAutomaton(Router.Route[] routes) {
+        this.programs = new Program[routes.length];
+        for (int i = 0; i < routes.length; i++) {
+            programs[i] = Program.compile(routes[i]);
+            if (programs[i] == null) {
+                fallbackRoutes.set(i);
+            }
+        }
+    }
+
+    /**
+     * Build an automaton for the given routes.
+     *
+     * @return the automaton, or null if it would need too many states
+     */
+    static RouteAutomaton build(Router.Route[] routes) {
+        RouteAutomaton automaton = new RouteAutomaton(routes);
+        automaton.buildAlphabet();
+        if (!automaton.buildStates()) {
+            logger.warn("Route automaton exceeds " + MAX_STATES + " states, falling back to route regex matching");
+            return null;
+        }
+        return automaton;
+    }
+
+    /**
+     * Run the automaton over the request path.
+     *
+     * @return the compiled routes whose path matches, in priority order
+     */
+    int[] accepted(String path) {
+        int state = 0;
+        for (int i = 0; i < path.length(); i++) {
+            state = transitions[state][interval(path.charAt(i))];
+            if (state < 0) {
+                return NONE;
+            }
+        }
+        return accepting[state];
+    }
+
+    /**
+     * Get the arguments offsets of a route accepted for the given path.
+     *
+     * @param route route index, as returned by {@link #accepted(String)}
+     * @param path request path
+     * @return [start0, end0, start1, end1...] for each path argument
+     */
+    int[] captures(int route, String path) {
+        Program program = programs[route];
+        int[] offsets = new int[program.slots * 2];
+        int pos = 0;
+        int slot = 0;
+        for (Token token : program.tokens) {
+            if (token.kind == LITERAL) {
+                pos++;
+            } else if (token.kind == OPTIONAL) {
+                if (pos < path.length()) {
+                    pos++;
+                }
+            } else {
+                offsets[slot++] = pos;
+                while (pos < path.length() && token.chars.contains(path.charAt(pos))) {
+                    pos++;
+                }
+                offsets[slot++] = pos;
+            }
+        }
+        return offsets;
+    }
+
+    private int interval(char c) {
+        if (c < 128) {
+            return asciiIntervals[c];
+        }
+        int index = Arrays.binarySearch(boundaries, c);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Split the char space in intervals, so that every char of an interval is
+     * accepted by the same tokens.
+     */
+    private void buildAlphabet() {
+        TreeSet<Integer> starts = new TreeSet<Integer>();
+        starts.add(0);
+        for (Program program : programs) {
+            if (program == null) {
+                continue;
+            }
+            for (Token token : program.tokens) {
+                int[] ranges = token.chars.ranges;
+                for (int i = 0; i < ranges.length; i += 2) {
+                    starts.add(ranges[i]);
+                    if (ranges[i + 1] < Character.MAX_VALUE) {
+                        starts.add(ranges[i + 1] + 1);
+                    }
+                }
+            }
+        }
+        boundaries = new int[starts.size()];
+        int n = 0;
+        for (Integer start : starts) {
+            boundaries[n++] = start;
+        }
+        for (char c = 0; c < 128; c++) {
+            int index = Arrays.binarySearch(boundaries, c);
+            asciiIntervals[c] = index >= 0 ? index : -index - 2;
+        }
+        for (Program program : programs) {
+            if (program == null) {
+                continue;
+            }
+            for (Token token : program.tokens) {
+                List<Integer> intervals = new ArrayList<Integer>();
+                for (int i = 0; i < boundaries.length; i++) {
+                    if (token.chars.contains((char) boundaries[i])) {
+                        intervals.add(i);
+                    }
+                }
+                token.intervals = new int[intervals.size()];
+                for (int i = 0; i < token.intervals.length; i++) {
+                    token.intervals[i] = intervals.get(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Subset construction over the NFA made of all compiled routes. An NFA
+     * state is (route, token position, inside a slot).
+     */
+    private boolean buildStates() {
+        int[] offsets = new int[programs.length + 1];
+        for (int i = 0; i < programs.length; i++) {
+            offsets[i + 1] = offsets[i] + (programs[i] == null ? 0 : 2 * (programs[i].tokens.length + 1));
+        }
+        int[] stateRoutes = new int[offsets[programs.length]];
+        for (int i = 0; i < programs.length; i++) {
+            for (int s = offsets[i]; s < offsets[i + 1]; s++) {
+                stateRoutes[s] = i;
+            }
+        }
+
+        BitSet start = new BitSet();
+        for (int i = 0; i < programs.length; i++) {
+            if (programs[i] != null) {
+                start.set(offsets[i]);
+            }
+        }
+
+        List<int[]> states = new ArrayList<int[]>();
+        List<int[]> stateTransitions = new ArrayList<int[]>();
+        Map<StateKey, Integer> ids = new HashMap<StateKey, Integer>();
+        int[] first = closure(start, offsets, stateRoutes);
+        states.add(first);
+        ids.put(new StateKey(first), 0);
+
+        for (int current = 0; current < states.size(); current++) {
+            int[] nfaStates = states.get(current);
+            BitSet[] moves = new BitSet[boundaries.length];
+            for (int s : nfaStates) {
+                int route = stateRoutes[s];
+                int local = s - offsets[route];
+                int pos = local / 2;
+                Token[] tokens = programs[route].tokens;
+                if (pos == tokens.length) {
+                    continue;
+                }
+                Token token = tokens[pos];
+                int target = token.kind == SLOT ? s | 1 : offsets[route] + 2 * (pos + 1);
+                for (int interval : token.intervals) {
+                    if (moves[interval] == null) {
+                        moves[interval] = new BitSet();
+                    }
+                    moves[interval].set(target);
+                }
+            }
+            int[] row = new int[boundaries.length];
+            for (int interval = 0; interval < boundaries.length; interval++) {
+                if (moves[interval] == null) {
+                    row[interval] = -1;
+                    continue;
+                }
+                int[] next = closure(moves[interval], offsets, stateRoutes);
+                StateKey key = new StateKey(next);
+                Integer id = ids.get(key);
+                if (id == null) {
+                    if (states.size() >= MAX_STATES) {
+                        return false;
+                    }
+                    id = states.size();
+                    states.add(next);
+                    ids.put(key, id);
+                }
+                row[interval] = id;
+            }
+            stateTransitions.add(row);
+        }
+
+        transitions = stateTransitions.toArray(new int[states.size()][]);
+        accepting = new int[states.size()][];
+        for (int i = 0; i < states.size(); i++) {
+            List<Integer> routes = new ArrayList<Integer>();
+            for (int s : states.get(i)) {
+                int route = stateRoutes[s];
+                if (s == offsets[route] + 2 * programs[route].tokens.length) {
+                    routes.add(route);
+                }
+            }
+            accepting[i] = NONE;
+            if (!routes.isEmpty()) {
+                accepting[i] = new int[routes.size()];
+                for (int r = 0; r < routes.size(); r++) {
+                    accepting[i][r] = routes.get(r);
+                }
+            }
+        }
+        return true;
+    }
+
+    private int[] closure(BitSet nfaStates, int[] offsets, int[] stateRoutes) {
+        BitSet result = (BitSet) nfaStates.clone();
+        for (int s = result.nextSetBit(0); s >= 0; s = result.nextSetBit(s + 1)) {
+            int route = stateRoutes[s];
+            int pos = (s - offsets[route]) / 2;
+            Token[] tokens = programs[route].tokens;
+            if (pos == tokens.length) {
+                continue;
+            }
+            Token token = tokens[pos];
+            boolean inside = (s & 1) == 1;
+            if (inside || token.kind == OPTIONAL || (token.kind == SLOT && token.emptyAllowed)) {
+                // states are only added after the current one, so the scan goes on
+                result.set(offsets[route] + 2 * (pos + 1));
+            }
+        }
+        int[] states = new int[result.cardinality()];
+        int n = 0;
+        for (int s = result.nextSetBit(0); s >= 0; s = result.nextSetBit(s + 1)) {
+            states[n++] = s;
+        }
+        return states;
+    }
+
+    private static class StateKey {
+
+        private final int[] states;
+
+        private final int hash;
+
+        StateKey(int[] states) {
+            this.states = states;
+            this.hash = Arrays.hashCode(states);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof StateKey && Arrays.equals(states, ((StateKey) other).states);
+        }
+    }
+
+    private static class Token {
+
+        final int kind;
+
+        final CharClass chars;
+
+        final boolean emptyAllowed;
+
+        int[] intervals;
+
+        Token(int kind, CharClass chars, boolean emptyAllowed) {
+            this.kind = kind;
+            this.chars = chars;
+            this.emptyAllowed = emptyAllowed;
+        }
+    }
+
+    /**
+     * Compiled route path
+     */
+    private static class Program {
+
+        final Token[] tokens;
+
+        final int slots;
+
+        private Program(List<Token> tokens, int slots) {
+            this.tokens = tokens.toArray(new Token[tokens.size()]);
+            this.slots = slots;
+        }
+
+        /**
+         * @return the compiled path, or null if the route path can't be
+         * compiled
+         */
+        static Program compile(Router.Route route) {
+            String path = route.path;
+            List<Token> tokens = new ArrayList<Token>();
+            List<String> names = new ArrayList<String>();
+            int i = 0;
+            while (i < path.length()) {
+                char c = path.charAt(i);
+                if (c == '{') {
+                    int end = RouteTrie.argumentEnd(path, i);
+                    if (end < 0) {
+                        return null;
+                    }
+                    String constraint = "[^/]+";
+                    String name = path.substring(i + 1, end - 1);
+                    if (path.charAt(i + 1) == '<') {
+                        int close = path.indexOf('>', i);
+                        constraint = path.substring(i + 2, close);
+                        name = path.substring(close + 1, end - 1);
+                    }
+                    Token slot = slot(constraint);
+                    if (slot == null || names.contains(name)) {
+                        return null;
+                    }
+                    tokens.add(slot);
+                    names.add(name);
+                    i = end;
+                } else if (c == '/' && i == path.length() - 2 && path.charAt(i + 1) == '?') {
+                    tokens.add(new Token(OPTIONAL, CharClass.of('/'), true));
+                    i += 2;
+                } else if (RouteTrie.isLiteral(String.valueOf(c))) {
+                    tokens.add(new Token(LITERAL, CharClass.of(c), false));
+                    i++;
+                } else {
+                    return null;
+                }
+            }
+            if (!names.equals(route.pathArgNames()) || !isUnambiguous(tokens)) {
+                return null;
+            }
+            return new Program(tokens, names.size());
+        }
+
+        private static Token slot(String constraint) {
+            int[] end = new int[1];
+            CharClass chars = CharClass.parse(constraint, 0, end);
+            if (chars == null || end[0] != constraint.length() - 1) {
+                return null;
+            }
+            char quantifier = constraint.charAt(end[0]);
+            if (quantifier != '+' && quantifier != '*') {
+                return null;
+            }
+            return new Token(SLOT, chars, quantifier == '*');
+        }
+
+        /**
+         * Every slot must be followed by the end of the path or by a token
+         * that can't match a char of the slot.
+         */
+        private static boolean isUnambiguous(List<Token> tokens) {
+            for (int i = 0; i < tokens.size(); i++) {
+                if (tokens.get(i).kind != SLOT || i == tokens.size() - 1) {
+                    continue;
+                }
+                Token next = tokens.get(i + 1);
+                if (next.kind == SLOT || tokens.get(i).chars.contains((char) next.chars.ranges[0])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package org.resthub.web.springmvc.router;
+
+/**
+ * Single pass tokenizer of route file lines.
+ *
+ * <p>A route definition reads:
+ * <pre>
+ * METHOD[(headers)] path [[qsParams]] action[(params)]
+ * </pre>
+ * where METHOD is one of GET, POST, PUT, DELETE, OPTIONS, HEAD or *, and the
+ * path holds at least one '/'. Tokens are separated by any amount of
+ * whitespace; whitespace runs inside headers, query string params and static
+ * params are read as a single space.
+ *
+ * <p>The tokenizer reads a line in place, only copying the tokens it returns,
+ * and tells the column of the first unexpected character of invalid lines. A
+ * tokenizer instance is reused for every line of a file, and is not thread
+ * safe.
+ *
+ * @author Brian Clozel
+ * @see org.resthub.web.springmvc.router.Router
+ */
+class RouteFileTokenizer {
+
+    /**
+     * Blank or comment line
+     */
+    static final int SKIP = 0;
+
+    static final int ROUTE = 1;
+
+    static final int INVALID = 2;
+
+    private static final String[] METHODS = {"GET", "POST", "PUT", "DELETE", "OPTIONS", "HEAD", "*"};
+
+    String method;
+
+    String headers;
+
+    String path;
+
+    /**
+     * Query string params, within their brackets and followed by a space, as
+     * read by {@link Router.Route#addQsParams(String)}; null if none
+     */
+    String qsParams;
+
+    String action;
+
+    /**
+     * Static params, with their parentheses; null if none
+     */
+    String params;
+
+    /**
+     * Reason the last line is invalid
+     */
+    String error;
+
+    /**
+     * Column of the error in the last line, starting at 1
+     */
+    int errorColumn;
+
+    private CharSequence text;
+
+    private int lineStart;
+
+    /**
+     * Read a route file line.
+     *
+     * @param text text holding the line
+     * @param start index of the first character of the line
+     * @param end index after the last character of the line, line
+     * terminator excluded
+     * @return {@link #ROUTE} if a route definition was read, {@link #SKIP}
+     * for blank and comment lines, or {@link #INVALID}
+     */
+    int tokenize(CharSequence text, int start, int end) {
+        this.text = text;
+        this.lineStart = start;
+        method = headers = path = qsParams = action = params = error = null;
+        errorColumn = 0;
+
+        int pos = skipWhitespace(start, end);
+        while (end > pos && isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        if (pos == end || text.charAt(pos) == '#') {
+            return SKIP;
+        }
+
+        // METHOD
+        int tokenEnd = pos;
+        while (tokenEnd < end && text.charAt(tokenEnd) != '(' && !isWhitespace(text.charAt(tokenEnd))) {
+            tokenEnd++;
+        }
+        method = method(pos, tokenEnd);
+        if (method == null) {
+            return invalid(pos, "unknown HTTP method");
+        }
+        pos = tokenEnd;
+
+        // (headers)
+        headers = "";
+        if (pos < end && text.charAt(pos) == '(') {
+            int close = indexOf(')', pos + 1, end);
+            if (close < 0) {
+                return invalid(pos, "unclosed '('");
+            }
+            headers = collapse(pos + 1, close);
+            pos = close + 1;
+        }
+
+        // path
+        int tokenStart = skipWhitespace(pos, end);
+        if (tokenStart == pos) {
+            return invalid(pos, tokenStart == end ? "missing path" : "expected whitespace after method");
+        }
+        pos = tokenStart;
+        tokenEnd = tokenEnd(pos, end);
+        if (indexOf('/', pos, tokenEnd) < 0) {
+            return invalid(pos, "path should contain a '/'");
+        }
+        path = text.subSequence(pos, tokenEnd).toString();
+        pos = skipWhitespace(tokenEnd, end);
+        if (pos == end) {
+            return invalid(pos, "missing action");
+        }
+
+        // [qsParams]
+        if (text.charAt(pos) == '[') {
+            int close = qsParamsEnd(pos, end);
+            if (close < 0) {
+                return invalid(pos, "unclosed '[' or missing action");
+            }
+            qsParams = collapse(pos, close + 1) + " ";
+            pos = skipWhitespace(close + 1, end);
+        }
+
+        // action(params)
+        tokenEnd = pos;
+        while (tokenEnd < end && text.charAt(tokenEnd) != '(' && !isWhitespace(text.charAt(tokenEnd))) {
+            tokenEnd++;
+        }
+        if (tokenEnd == pos) {
+            return invalid(pos, "missing action");
+        }
+        action = text.subSequence(pos, tokenEnd).toString();
+        if (tokenEnd < end) {
+            params = collapse(tokenEnd, end);
+        }
+        return ROUTE;
+    }
+
+    private int invalid(int pos, String reason) {
+        error = reason;
+        errorColumn = pos - lineStart + 1;
+        return INVALID;
+    }
+
+    private String method(int start, int end) {
+        for (String candidate : METHODS) {
+            if (candidate.length() == end - start && regionMatches(start, candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the ']' closing the query string params: the last one followed
+     * by whitespace and an action.
+     */
+    private int qsParamsEnd(int start, int end) {
+        for (int i = end - 2; i > start; i--) {
+            if (text.charAt(i) == ']' && isWhitespace(text.charAt(i + 1))) {
+                int action = skipWhitespace(i + 1, end);
+                if (action < end && text.charAt(action) != '(') {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private int tokenEnd(int pos, int end) {
+        while (pos < end && !isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private int skipWhitespace(int pos, int end) {
+        while (pos < end && isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private int indexOf(char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean regionMatches(int start, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (text.charAt(start + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copy [start, end), reading each whitespace run as a single space.
+     */
+    private String collapse(int start, int end) {
+        boolean plain = true;
+        for (int i = start; i < end && plain; i++) {
+            char c = text.charAt(i);
+            plain = c == ' ' ? i + 1 == end || text.charAt(i + 1) != ' ' : !isWhitespace(c);
+        }
+        if (plain) {
+            return text.subSequence(start, end).toString();
+        }
+        StringBuilder collapsed = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (!isWhitespace(c)) {
+                collapsed.append(c);
+            } else if (i == start || !isWhitespace(text.charAt(i - 1))) {
+                collapsed.append(' ');
+            }
+        }
+        return collapsed.toString();
+    }
+
+    static boolean isWhitespace(char c) {
+        return c <= ' ';
+    }
+}
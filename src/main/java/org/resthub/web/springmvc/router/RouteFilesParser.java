@@ -0,0 +1,193 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.resthub.web.springmvc.router.Router.Route;
+import org.resthub.web.springmvc.router.exceptions.RouteFileParsingException;
+
+/**
+ * Parser of several route files at once, sharing the work between threads.
+ *
+ * <p>Route files are split in chunks of lines, and each chunk is parsed and
+ * its route patterns compiled by a pool thread. Chunk results are then merged
+ * back in file and line order, so that route priorities are the same as with
+ * a sequential parse.
+ *
+ * <p>The pool is only created when there is more than one chunk to parse, and
+ * kept for the next loads; its threads stop after a minute without work.
+ * Parses must not run concurrently, the router context serializes its loads.
+ *
+ * @author Brian Clozel
+ * @see org.resthub.web.springmvc.router.RouterContext
+ */
+class RouteFilesParser {
+
+    /**
+     * Number of lines parsed by a single task
+     */
+    static final int CHUNK_SIZE = 256;
+
+    private final int threads;
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * @param threads maximum number of parsing threads; 0 for the number of
+     * processors, 1 to parse on the calling thread
+     */
+    RouteFilesParser(int threads) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Parse the given route files.
+     *
+     * @param errors if not null, collects the invalid lines and route
+     * definitions instead of logging or throwing them
+     * @return the routes of each route file, in declaration order
+     */
+    List<List<Route>> parse(List<String> contents, List<String> paths, String prefix, List<String> errors) {
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        for (int i = 0; i < contents.size(); i++) {
+            String content = contents.get(i);
+            int start = 0;
+            int line = 1;
+            while (start <= content.length()) {
+                // end the chunk after CHUNK_SIZE lines, or at the end of the file
+                int end = start - 1;
+                int lines = 0;
+                while (lines < CHUNK_SIZE && end < content.length()) {
+                    end = content.indexOf('\n', end + 1);
+                    if (end < 0) {
+                        end = content.length();
+                    }
+                    lines++;
+                }
+                chunks.add(new Chunk(i, content, start, end, line, prefix, paths.get(i), errors != null));
+                start = end + 1;
+                line += lines;
+            }
+        }
+
+        if (threads > 1 && chunks.size() > 1) {
+            parseInPool(chunks);
+        } else {
+            for (Chunk chunk : chunks) {
+                chunk.call();
+            }
+        }
+
+        List<List<Route>> routesByFile = new ArrayList<List<Route>>(contents.size());
+        for (int i = 0; i < contents.size(); i++) {
+            routesByFile.add(new ArrayList<Route>());
+        }
+        for (Chunk chunk : chunks) {
+            routesByFile.get(chunk.file).addAll(chunk.routes);
+            if (errors != null) {
+                errors.addAll(chunk.errors);
+            }
+        }
+        return routesByFile;
+    }
+
+    int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Stop the pool threads, if any.
+     */
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    private void parseInPool(List<Chunk> chunks) {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "route-files-parser");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        List<Future<Chunk>> results = new ArrayList<Future<Chunk>>(chunks.size());
+        try {
+            for (Chunk chunk : chunks) {
+                results.add(executor.submit(chunk));
+            }
+            for (Future<Chunk> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RouteFileParsingException("Interrupted while parsing route files", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw new RouteFileParsingException("Could not parse route files", ex.getCause());
+        } finally {
+            // a failed parse doesn't leave tasks running for the next one
+            for (Future<Chunk> result : results) {
+                result.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Lines of a route file to parse
+     */
+    private static class Chunk implements Callable<Chunk> {
+
+        final int file;
+
+        final String content;
+
+        final int start;
+
+        final int end;
+
+        final int firstLine;
+
+        final String prefix;
+
+        final String path;
+
+        final List<String> errors;
+
+        List<Route> routes;
+
+        Chunk(int file, String content, int start, int end, int firstLine, String prefix, String path, boolean collectErrors) {
+            this.file = file;
+            this.content = content;
+            this.start = start;
+            this.end = end;
+            this.firstLine = firstLine;
+            this.prefix = prefix;
+            this.path = path;
+            this.errors = collectErrors ? new ArrayList<String>() : null;
+        }
+
+        public Chunk call() {
+            routes = Router.parse(content, start, end, firstLine, prefix, path, errors);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.resthub.web.springmvc.router;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+
+/**
+ * Background reloading of the route files of a {@link RouterContext}.
+ *
+ * <p>A daemon thread checks the modification date and size of the route files
+ * at a fixed interval. Once a change is seen, the files are reloaded as soon
+ * as they stay unchanged for a whole interval, so that a burst of edits only
+ * triggers a single reload. Route files are parsed and compiled by the
+ * watcher thread, and the new route table is published only if every route
+ * definition is valid: requests never wait for a reload, and keep using the
+ * current routes if the new ones are invalid.
+ *
+ * <p>Only route files found on the file system are watched.
+ *
+ * @author Brian Clozel
+ * @see org.resthub.web.springmvc.router.RouterHandlerMapping
+ */
+class RouteFilesWatcher implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(RouteFilesWatcher.class);
+
+    private final RouterContext context;
+
+    private final List<Resource> fileResources;
+
+    private final String prefix;
+
+    private final List<File> files = new ArrayList<File>();
+
+    private final long interval;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * State of the files when last loaded
+     */
+    private long[] loaded;
+
+    /**
+     * State of the files at the previous check
+     */
+    private long[] previous;
+
+    /**
+     * @param context the context to load the route files in
+     * @param interval delay between two checks, in milliseconds
+     */
+    RouteFilesWatcher(RouterContext context, List<Resource> fileResources, String prefix, long interval) {
+        this.context = context;
+        this.fileResources = new ArrayList<Resource>(fileResources);
+        this.prefix = prefix;
+        this.interval = interval;
+        for (Resource res : fileResources) {
+            try {
+                files.add(res.getFile());
+            } catch (IOException ex) {
+                logger.warn("Route file " + res.getDescription() + " is not on the file system, it won't be watched");
+            }
+        }
+        this.loaded = state();
+        this.previous = loaded;
+    }
+
+    /**
+     * Start checking the route files in a daemon thread.
+     */
+    synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "route-files-watcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(this, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop checking the route files; a reload in progress is completed.
+     */
+    synchronized void stop() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * Check the route files once, and reload them if they changed and then
+     * stayed unchanged since the previous check.
+     *
+     * @return true if the route files were reloaded
+     */
+    boolean check() {
+        long[] current = state();
+        boolean settled = Arrays.equals(current, previous);
+        previous = current;
+        if (!settled || Arrays.equals(current, loaded)) {
+            return false;
+        }
+        // the route files are not checked again until they change
+        loaded = current;
+        try {
+            context.load(fileResources, prefix, true);
+            logger.info("Route files reloaded");
+            return true;
+        } catch (IOException ex) {
+            logger.error("Could not read route configuration files", ex);
+        } catch (RuntimeException ex) {
+            logger.error("Could not reload route configuration files", ex);
+        }
+        return false;
+    }
+
+    public void run() {
+        check();
+    }
+
+    /**
+     * Get the modification date and size of each file
+     */
+    private long[] state() {
+        long[] state = new long[2 * files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            state[2 * i] = files.get(i).lastModified();
+            state[2 * i + 1] = files.get(i).length();
+        }
+        return state;
+    }
+}
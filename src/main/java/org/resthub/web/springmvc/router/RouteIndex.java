@@ -0,0 +1,400 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * Per HTTP method dispatch tables, computed from the route list.
+ *
+ * <p>Routes are split in one table per HTTP method found in the route list;
+ * routes declared with the "*" method are merged in every table, in priority
+ * order. HEAD requests use a merged HEAD/GET table, since a GET route also
+ * serves HEAD requests. A request method that isn't used by any route only
+ * sees the "*" routes.
+ *
+ * <p>Each table has its own {@link RouteTrie} path index, and an exact match
+ * lookup for routes that have no argument nor condition; such a route is only
+ * looked up that way if no route declared before it may match the same
+ * request.
+ *
+ * <p>Tables are also partitioned by request host (see {@link HostIndex}), so
+ * that routes bound to other hosts are never evaluated. When routes have host
+ * parts, each partition is built the first time a request needs it, since
+ * most host partitions share the routes without host and few of them are
+ * actually requested.
+ *
+ * <p>Path matching is done either by the tries, or by a {@link RouteAutomaton}
+ * when enabled.
+ *
+ * @author Brian Clozel
+ * @see org.resthub.web.springmvc.router.Router
+ */
+class RouteIndex {
+
+    private final int size;
+
+    private final List<Router.Route> routes;
+
+    private final boolean automaton;
+
+    private final HostIndex hosts;
+
+    /**
+     * Tables by HTTP method, then by host partition
+     */
+    private final Map<String, Partitions> tables = new HashMap<String, Partitions>();
+
+    private final Partitions starTables;
+
+    private final MethodTable allRoutes;
+
+    /**
+     * @param routes routes, in priority order
+     * @param automaton whether path patterns should be compiled to a
+     * {@link RouteAutomaton}
+     */
+    RouteIndex(List<Router.Route> routes, boolean automaton) {
+        this.size = routes.size();
+        this.routes = routes;
+        this.automaton = automaton;
+        Set<String> methods = new LinkedHashSet<String>();
+        for (Router.Route route : routes) {
+            if (!"*".equals(route.method)) {
+                methods.add(normalize(route.method));
+            }
+        }
+        this.hosts = new HostIndex(routes);
+        for (String method : methods) {
+            tables.put(method, new Partitions(method));
+        }
+        if (!tables.containsKey("HEAD") && tables.containsKey("GET")) {
+            tables.put("HEAD", new Partitions("HEAD"));
+        }
+        this.starTables = new Partitions("*");
+        this.allRoutes = new MethodTable(routes, null, hosts.routes(0), false);
+    }
+
+    /**
+     * Number of routes indexed
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Get the dispatch table for the given HTTP method, for any host.
+     *
+     * @param method HTTP method of the request; null means any method
+     */
+    MethodTable table(String method) {
+        return table(method, null);
+    }
+
+    /**
+     * Get the dispatch table for the given HTTP method and request host.
+     *
+     * @param method HTTP method of the request; null means any method
+     * @param host request host; null means any host
+     */
+    MethodTable table(String method, String host) {
+        if (method == null) {
+            return allRoutes;
+        }
+        Partitions partitions = tables.get(normalize(method));
+        if (partitions == null) {
+            partitions = starTables;
+        }
+        return partitions.table(hosts.partition(host));
+    }
+
+    /**
+     * Tables of an HTTP method, by host partition
+     */
+    private class Partitions {
+
+        private final String method;
+
+        private final AtomicReferenceArray<MethodTable> tables;
+
+        /**
+         * @param method upper-case HTTP method, "*" for the "*" routes only
+         */
+        Partitions(String method) {
+            this.method = method;
+            this.tables = new AtomicReferenceArray<MethodTable>(hosts.size());
+            // without host parts, the single table is built with the index
+            if (hosts.size() == 1) {
+                table(0);
+            }
+        }
+
+        MethodTable table(int partition) {
+            MethodTable table = tables.get(partition);
+            if (table == null) {
+                // concurrent requests may build the same table, only one is kept
+                tables.compareAndSet(partition, null, new MethodTable(routes, method, hosts.routes(partition), automaton));
+                table = tables.get(partition);
+            }
+            return table;
+        }
+    }
+
+    /**
+     * A route matching a request, with the arguments extracted from it
+     */
+    static class RouteMatch {
+
+        final Router.Route route;
+
+        final RouteArgs args;
+
+        /**
+         * Whether a route checked before or by this match has query string
+         * conditions, so that another query string may give another result
+         */
+        final boolean queryDependent;
+
+        RouteMatch(Router.Route route, RouteArgs args, boolean queryDependent) {
+            this.route = route;
+            this.args = args;
+            this.queryDependent = queryDependent;
+        }
+    }
+
+    private static String normalize(String method) {
+        return method.toUpperCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Routes serving a given HTTP method, in priority order
+     */
+    static class MethodTable {
+
+        final Router.Route[] routes;
+
+        final int[] indexes;
+
+        final RouteTrie trie;
+
+        /**
+         * Routes with query string conditions
+         */
+        private final BitSet queryRoutes = new BitSet();
+
+        /**
+         * Combined path automaton, null if disabled
+         */
+        final RouteAutomaton automaton;
+
+        /**
+         * Static routes without host, by request path
+         */
+        private final Map<String, Router.Route> staticRoutes = new HashMap<String, Router.Route>();
+
+        /**
+         * Static routes with a literal host, by host and request path
+         */
+        private final Map<String, Map<String, Router.Route>> staticHostRoutes = new HashMap<String, Map<String, Router.Route>>();
+
+        /**
+         * @param method upper-case HTTP method, "*" for the "*" routes only or
+         * null for all routes
+         * @param hostRoutes indexes of the routes serving the request host
+         * @param automaton whether a combined path automaton should be built
+         */
+        MethodTable(List<Router.Route> allRoutes, String method, BitSet hostRoutes, boolean automaton) {
+            List<Router.Route> selected = new ArrayList<Router.Route>();
+            List<Integer> selectedIndexes = new ArrayList<Integer>();
+            for (int i = hostRoutes.nextSetBit(0); i >= 0 && i < allRoutes.size(); i = hostRoutes.nextSetBit(i + 1)) {
+                Router.Route route = allRoutes.get(i);
+                if (serves(route, method)) {
+                    selected.add(route);
+                    selectedIndexes.add(i);
+                }
+            }
+            this.routes = selected.toArray(new Router.Route[selected.size()]);
+            this.indexes = new int[selectedIndexes.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = selectedIndexes.get(i);
+            }
+            this.trie = new RouteTrie(selected);
+            this.automaton = automaton ? RouteAutomaton.build(routes) : null;
+            for (int i = 0; i < routes.length; i++) {
+                Router.Route route = routes[i];
+                if (!route.qsParams.isEmpty()) {
+                    queryRoutes.set(i);
+                }
+                if (route.staticPaths == null) {
+                    continue;
+                }
+                Map<String, Router.Route> byPath = staticRoutes(route.host, true);
+                for (String path : route.staticPaths) {
+                    if (!byPath.containsKey(path) && !isShadowed(i, route.host, path)) {
+                        byPath.put(path, route);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Find the first route of this table matching the given request.
+         *
+         * @return the match, or null if no route matches
+         */
+        RouteMatch match(String path, String accept, String domain, QueryString queryParams) {
+            return match(path, accept, domain, queryParams, null);
+        }
+
+        /**
+         * Find the first route of this table matching the given request.
+         *
+         * @param evaluated if not null, its first element is increased by the
+         * number of routes evaluated
+         * @return the match, or null if no route matches
+         */
+        RouteMatch match(String path, String accept, String domain, QueryString queryParams, int[] evaluated) {
+            if (automaton != null) {
+                return automatonMatch(path, accept, domain, queryParams, evaluated);
+            }
+            BitSet candidates = trie.candidates(path);
+            boolean queryDependent = false;
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                if (evaluated != null) {
+                    evaluated[0]++;
+                }
+                queryDependent |= !routes[i].qsParams.isEmpty();
+                RouteArgs args = routes[i].matchesRequest(path, accept, domain, queryParams);
+                if (args != null) {
+                    return new RouteMatch(routes[i], args, queryDependent);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Whether a route with query string conditions may match the given
+         * path, so that the result of a match also depends on the query string.
+         */
+        boolean mayDependOnQuery(String path) {
+            return !queryRoutes.isEmpty() && trie.candidates(path).intersects(queryRoutes);
+        }
+
+        /**
+         * Merge the routes accepted by the automaton with the fallback routes
+         * that may match the path, in priority order.
+         */
+        private RouteMatch automatonMatch(String path, String accept, String domain, QueryString queryParams, int[] evaluated) {
+            int[] accepted = automaton.accepted(path);
+            BitSet fallback = null;
+            if (!automaton.fallbackRoutes.isEmpty()) {
+                fallback = trie.candidates(path);
+                fallback.and(automaton.fallbackRoutes);
+            }
+            int next = 0;
+            int nextFallback = fallback == null ? -1 : fallback.nextSetBit(0);
+            boolean queryDependent = false;
+            while (next < accepted.length || nextFallback >= 0) {
+                RouteArgs args;
+                int i;
+                if (nextFallback < 0 || (next < accepted.length && accepted[next] < nextFallback)) {
+                    i = accepted[next++];
+                    args = routes[i].matchesRequest(path, automaton.captures(i, path), accept, domain, queryParams);
+                } else {
+                    i = nextFallback;
+                    nextFallback = fallback.nextSetBit(nextFallback + 1);
+                    args = routes[i].matchesRequest(path, accept, domain, queryParams);
+                }
+                if (evaluated != null) {
+                    evaluated[0]++;
+                }
+                queryDependent |= !routes[i].qsParams.isEmpty();
+                if (args != null) {
+                    return new RouteMatch(routes[i], args, queryDependent);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Get the static route answering the given request, if no route with a
+         * higher priority may match it.
+         *
+         * @param host request host; no static route is returned if null
+         * @param path request path
+         * @return the matching route, or null if the request needs a full match
+         */
+        Router.Route staticRoute(String host, String path) {
+            if (host == null) {
+                return null;
+            }
+            if (!staticHostRoutes.isEmpty()) {
+                Map<String, Router.Route> byPath = staticHostRoutes.get(host);
+                if (byPath != null) {
+                    Router.Route route = byPath.get(path);
+                    if (route != null) {
+                        return route;
+                    }
+                }
+            }
+            return staticRoutes.get(path);
+        }
+
+        private Map<String, Router.Route> staticRoutes(String host, boolean create) {
+            if (host.length() == 0) {
+                return staticRoutes;
+            }
+            Map<String, Router.Route> byPath = staticHostRoutes.get(host);
+            if (byPath == null && create) {
+                byPath = new HashMap<String, Router.Route>();
+                staticHostRoutes.put(host, byPath);
+            }
+            return byPath;
+        }
+
+        /**
+         * Check if a route declared before the one at the given position may
+         * match the same request path, and can't be told apart by the static
+         * routes lookup.
+         */
+        private boolean isShadowed(int position, String host, String path) {
+            BitSet candidates = trie.candidates(path);
+            for (int i = candidates.nextSetBit(0); i >= 0 && i < position; i = candidates.nextSetBit(i + 1)) {
+                Router.Route route = routes[i];
+                if (!route.pattern.matches(path)) {
+                    continue;
+                }
+                if (route.host.length() > 0 && route.hasLiteralHost()) {
+                    // routes bound to another literal host never match the same requests
+                    if (host.length() > 0 && !host.equals(route.host)) {
+                        continue;
+                    }
+                    // looked up before static routes without host
+                    Map<String, Router.Route> byPath = staticRoutes(route.host, false);
+                    if (host.length() == 0 && byPath != null && byPath.containsKey(path)) {
+                        continue;
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+
+        private static boolean serves(Router.Route route, String method) {
+            if (method == null || "*".equals(route.method)) {
+                return true;
+            }
+            if (method.equalsIgnoreCase(route.method)) {
+                return true;
+            }
+            return "HEAD".equals(method) && "GET".equalsIgnoreCase(route.method);
+        }
+    }
+}
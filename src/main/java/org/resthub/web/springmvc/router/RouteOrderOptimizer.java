@@ -0,0 +1,368 @@
+package org.resthub.web.springmvc.router;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.resthub.web.springmvc.router.Router.Route;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reorders the routes evaluated by the dispatch tables, so that frequently
+ * matched routes are checked first.
+ *
+ * <p>The optimizer counts the requests each route matched, including the
+ * ones answered by the routing cache, since uncached requests to the same
+ * routes go through the ordered evaluation. Static routes aren't counted:
+ * the exact path lookup answers them before any route is evaluated, so
+ * their position saves no work. A route is then moved before the less
+ * frequently matched routes declared before it, as long as none of the
+ * routes it passes may match the same request: two routes may only be
+ * swapped if they serve different HTTP methods or literal hosts, or if their
+ * paths can be told apart by their literal prefix or the first char their
+ * arguments accept. Routes that may match the same request keep their
+ * declared order, so every request is routed as before.
+ *
+ * <p>Only the match order changes: the route list and reverse routing keep
+ * the declared order. Hit counts may be saved to a profile file, so that a
+ * restarted application starts with the learned order.
+ *
+ * @author Brian Clozel
+ * @see org.resthub.web.springmvc.router.RouterContext#optimizeRouteOrder()
+ */
+class RouteOrderOptimizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(RouteOrderOptimizer.class);
+
+    /**
+     * Hits counted since the last reordering, by route
+     */
+    private final ConcurrentHashMap<Route, AtomicLong> hits = new ConcurrentHashMap<Route, AtomicLong>();
+
+    /**
+     * Hits of all previous periods, by route signature
+     */
+    private final Map<String, Long> profile = new HashMap<String, Long>();
+
+    private final File profileFile;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param profileFile file the hit counts are saved to, null if not saved
+     */
+    RouteOrderOptimizer(File profileFile) {
+        this.profileFile = profileFile;
+        if (profileFile != null && profileFile.isFile()) {
+            loadProfile();
+        }
+    }
+
+    /**
+     * Count a request matched by the given route.
+     */
+    void hit(Route route) {
+        AtomicLong count = hits.get(route);
+        if (count == null) {
+            count = new AtomicLong();
+            AtomicLong previous = hits.putIfAbsent(route, count);
+            if (previous != null) {
+                count = previous;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * Compute the match order of the given routes, from the hits counted so
+     * far.
+     *
+     * @param routes routes in declared order
+     * @return the routes, in match order
+     */
+    synchronized List<Route> order(List<Route> routes) {
+        for (Map.Entry<Route, AtomicLong> hit : hits.entrySet()) {
+            long count = hit.getValue().getAndSet(0);
+            if (count > 0) {
+                String signature = signature(hit.getKey());
+                Long total = profile.get(signature);
+                profile.put(signature, total == null ? count : total + count);
+            }
+        }
+        hits.clear();
+
+        final Map<Route, Long> counts = new HashMap<Route, Long>();
+        List<Route> hot = new ArrayList<Route>();
+        for (Route route : routes) {
+            Long count = profile.get(signature(route));
+            if (count != null && count > 0 && !counts.containsKey(route)) {
+                counts.put(route, count);
+                hot.add(route);
+            }
+        }
+        // stable sort: equally hot routes keep their declared order
+        Collections.sort(hot, new Comparator<Route>() {
+            public int compare(Route a, Route b) {
+                return counts.get(b).compareTo(counts.get(a));
+            }
+        });
+
+        List<Route> order = new ArrayList<Route>(routes);
+        for (Route route : hot) {
+            int position = order.indexOf(route);
+            long count = counts.get(route);
+            int target = position;
+            while (target > 0) {
+                Route previous = order.get(target - 1);
+                Long previousCount = counts.get(previous);
+                if ((previousCount != null && previousCount >= count) || mayOverlap(previous, route)) {
+                    break;
+                }
+                target--;
+            }
+            if (target < position) {
+                order.remove(position);
+                order.add(target, route);
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Periodically reorder the routes of the given context, in a daemon
+     * thread.
+     *
+     * @param interval delay between two reorderings, in milliseconds
+     */
+    synchronized void start(final RouterContext context, long interval) {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "route-order-optimizer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    context.optimizeRouteOrder();
+                    saveProfile();
+                } catch (RuntimeException ex) {
+                    logger.error("Could not reorder routes", ex);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop reordering routes, and save the hit counts.
+     */
+    synchronized void stop() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        saveProfile();
+    }
+
+    /**
+     * Save the hit counts to the profile file, if any.
+     */
+    synchronized void saveProfile() {
+        if (profileFile == null) {
+            return;
+        }
+        Properties properties = new Properties();
+        for (Map.Entry<String, Long> count : profile.entrySet()) {
+            properties.setProperty(count.getKey(), count.getValue().toString());
+        }
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(profileFile);
+            properties.store(out, "Route hit counts");
+        } catch (IOException ex) {
+            logger.warn("Could not save route profile " + profileFile, ex);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    private void loadProfile() {
+        Properties properties = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(profileFile);
+            properties.load(in);
+            for (String signature : properties.stringPropertyNames()) {
+                profile.put(signature, Long.valueOf(properties.getProperty(signature)));
+            }
+        } catch (IOException ex) {
+            logger.warn("Could not read route profile " + profileFile, ex);
+        } catch (NumberFormatException ex) {
+            logger.warn("Invalid route profile " + profileFile, ex);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Identify a route across reloads and restarts.
+     */
+    static String signature(Route route) {
+        return route.method + " " + route.host + route.path + " " + route.action;
+    }
+
+    /**
+     * Check whether two routes may match the same request. This check is
+     * conservative: routes are only told apart when it is obvious.
+     */
+    static boolean mayOverlap(Route a, Route b) {
+        if (!methodsOverlap(a.method, b.method)) {
+            return false;
+        }
+        if (a.hasLiteralHost() && b.hasLiteralHost() && a.host.length() > 0 && b.host.length() > 0
+                && !a.host.equals(b.host)) {
+            return false;
+        }
+        return pathsOverlap(a.path, b.path);
+    }
+
+    private static boolean methodsOverlap(String a, String b) {
+        if ("*".equals(a) || "*".equals(b) || a.equalsIgnoreCase(b)) {
+            return true;
+        }
+        // GET routes also serve HEAD requests
+        return ("GET".equalsIgnoreCase(a) && "HEAD".equalsIgnoreCase(b))
+                || ("HEAD".equalsIgnoreCase(a) && "GET".equalsIgnoreCase(b));
+    }
+
+    private static boolean pathsOverlap(String a, String b) {
+        // a top level alternative doesn't start with the literal prefix
+        if (hasAlternation(a) || hasAlternation(b)) {
+            return true;
+        }
+        int prefixA = literalPrefix(a);
+        int prefixB = literalPrefix(b);
+        int common = Math.min(prefixA, prefixB);
+        if (!a.regionMatches(0, b, 0, common)) {
+            return false;
+        }
+        if (prefixA == a.length() && prefixB == b.length()) {
+            return a.equals(b);
+        }
+        if (prefixA == a.length() && prefixB == prefixA) {
+            return firstArgChars(b, prefixB) == null;
+        }
+        if (prefixB == b.length() && prefixA == prefixB) {
+            return firstArgChars(a, prefixA) == null;
+        }
+        if (prefixA == prefixB) {
+            CharClass first = firstArgChars(a, prefixA);
+            CharClass other = firstArgChars(b, prefixB);
+            return first == null || other == null || first.intersects(other);
+        }
+        // the shorter prefix must accept the next literal char of the longer
+        String shorter = prefixA < prefixB ? a : b;
+        String longer = prefixA < prefixB ? b : a;
+        if (common == shorter.length()) {
+            // a fully literal path can't match a longer one
+            return false;
+        }
+        CharClass first = firstArgChars(shorter, common);
+        return first == null || first.contains(longer.charAt(common));
+    }
+
+    /**
+     * Length of the leading part of a path pattern made of literal chars that
+     * a matching request path must start with.
+     */
+    private static int literalPrefix(String path) {
+        int i = 0;
+        while (i < path.length() && RouteTrie.isLiteral(String.valueOf(path.charAt(i)))) {
+            i++;
+        }
+        // a quantifier makes the char before it optional
+        if (i < path.length() && i > 0 && "?*".indexOf(path.charAt(i)) >= 0) {
+            i--;
+        }
+        return i;
+    }
+
+    /**
+     * Whether a path pattern has a '|' outside of its argument constraints.
+     */
+    private static boolean hasAlternation(String path) {
+        int i = 0;
+        while (i < path.length()) {
+            char c = path.charAt(i);
+            if (c == '|') {
+                return true;
+            }
+            if (c == '{') {
+                // skip the argument, its constraint may hold '}' or '|'
+                int close = path.indexOf('>', i);
+                if (i + 1 < path.length() && path.charAt(i + 1) == '<' && close > 0) {
+                    i = close;
+                }
+                close = path.indexOf('}', i);
+                if (close < 0) {
+                    return false;
+                }
+                i = close;
+            }
+            i++;
+        }
+        return false;
+    }
+
+    /**
+     * Get the chars the first char of the argument at the given position may
+     * be, if the argument matches at least one char.
+     *
+     * @return the chars, or null if there's no argument there or its
+     * constraint is too complex
+     */
+    private static CharClass firstArgChars(String path, int start) {
+        if (start >= path.length() || path.charAt(start) != '{') {
+            return null;
+        }
+        String constraint = "[^/]+";
+        if (start + 1 < path.length() && path.charAt(start + 1) == '<') {
+            int close = path.indexOf('>', start);
+            if (close < 0) {
+                return null;
+            }
+            constraint = path.substring(start + 2, close);
+        }
+        if (constraint.indexOf('|') >= 0) {
+            return null;
+        }
+        int[] end = new int[1];
+        CharClass chars = CharClass.parse(constraint, 0, end);
+        if (chars == null || (end[0] < constraint.length() && "?*{".indexOf(constraint.charAt(end[0])) >= 0)) {
+            return null;
+        }
+        return chars;
+    }
+}
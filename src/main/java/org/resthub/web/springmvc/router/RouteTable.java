@@ -0,0 +1,107 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable snapshot of the route list, with its dispatch tables.
+ *
+ * <p>The Router never changes a published table: loading route files or
+ * adding a route builds a new table aside, then publishes it by swapping a
+ * single volatile reference. A request reads the current table once and is
+ * routed against that snapshot only, without taking any lock.
+ *
+ * @author Brian Clozel
+ * @see org.resthub.web.springmvc.router.Router
+ */
+class RouteTable {
+
+    static final RouteTable EMPTY = new RouteTable(Collections.<Router.Route>emptyList(), false);
+
+    /**
+     * Routes, in priority order (read-only)
+     */
+    final List<Router.Route> routes;
+
+    final boolean automatonMatching;
+
+    /**
+     * Routes in the order the dispatch tables evaluate them: the priority
+     * order, or an order giving the same results (see
+     * {@link RouteOrderOptimizer})
+     */
+    final List<Router.Route> matchOrder;
+
+    private volatile RouteIndex index;
+
+    private volatile ReverseIndex reverseIndex;
+
+    /**
+     * @param routes routes in priority order; copied
+     * @param automatonMatching whether route paths are matched by a combined
+     * automaton
+     */
+    RouteTable(List<Router.Route> routes, boolean automatonMatching) {
+        this.routes = Collections.unmodifiableList(new ArrayList<Router.Route>(routes));
+        this.automatonMatching = automatonMatching;
+        this.matchOrder = this.routes;
+    }
+
+    private RouteTable(List<Router.Route> routes, List<Router.Route> matchOrder, boolean automatonMatching,
+            ReverseIndex reverseIndex) {
+        this.routes = routes;
+        this.automatonMatching = automatonMatching;
+        this.matchOrder = matchOrder;
+        this.reverseIndex = reverseIndex;
+    }
+
+    /**
+     * Get the dispatch tables, building them on first use. Concurrent first
+     * lookups may build them more than once, which is harmless since the
+     * table doesn't change.
+     */
+    RouteIndex index() {
+        RouteIndex result = index;
+        if (result == null) {
+            result = new RouteIndex(matchOrder, automatonMatching);
+            index = result;
+        }
+        return result;
+    }
+
+    /**
+     * Get the reverse routing candidates by action, building them on first
+     * use.
+     */
+    ReverseIndex reverseIndex() {
+        ReverseIndex result = reverseIndex;
+        if (result == null) {
+            result = new ReverseIndex(routes);
+            reverseIndex = result;
+        }
+        return result;
+    }
+
+    /**
+     * Copy this table with another route list.
+     */
+    RouteTable withRoutes(List<Router.Route> routes) {
+        return new RouteTable(routes, automatonMatching);
+    }
+
+    /**
+     * Copy this table with another path matching engine.
+     */
+    RouteTable withAutomatonMatching(boolean automatonMatching) {
+        return new RouteTable(routes, matchOrder, automatonMatching, reverseIndex);
+    }
+
+    /**
+     * Copy this table with another match order of the same routes.
+     */
+    RouteTable withMatchOrder(List<Router.Route> matchOrder) {
+        return new RouteTable(routes, Collections.unmodifiableList(new ArrayList<Router.Route>(matchOrder)),
+                automatonMatching, reverseIndex);
+    }
+}
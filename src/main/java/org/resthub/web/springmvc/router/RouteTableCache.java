@@ -0,0 +1,296 @@
+package org.resthub.web.springmvc.router;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import jregex.Pattern;
+import jregex.REFlags;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * On-disk cache of compiled route files, to skip parsing route files when an
+ * application restarts with unchanged routes.
+ *
+ * <p>Each cache file holds the routes of a set of route files, keyed by the
+ * library version and a hash of their locations and contents and the servlet
+ * prefix. Routes are stored in a compact binary form, once their definition
+ * is parsed and their patterns are rewritten: loading them only compiles
+ * their final patterns.
+ *
+ * @author Brian Clozel
+ * @see org.resthub.web.springmvc.router.RouterContext
+ */
+class RouteTableCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RouteTableCache.class);
+
+    private static final int MAGIC = 0x52544331;
+
+    /**
+     * Version of the cache file format, to change whenever the Route fields
+     * change
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Version of this library, read from the version.properties resource
+     * filtered by the build
+     */
+    static final String LIBRARY_VERSION = libraryVersion();
+
+    private final File directory;
+
+    private final String libraryVersion;
+
+    RouteTableCache(File directory) {
+        this(directory, LIBRARY_VERSION);
+    }
+
+    RouteTableCache(File directory, String libraryVersion) {
+        this.directory = directory;
+        this.libraryVersion = libraryVersion;
+    }
+
+    /**
+     * Read the routes of the given route files.
+     *
+     * @param key hash of the route files and servlet prefix
+     * @return the routes of each route file, or null if not cached
+     */
+    List<List<Router.Route>> read(String key, List<String> paths, List<String> hashes) {
+        File file = file(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                    || !libraryVersion.equals(in.readUTF()) || in.readInt() != paths.size()) {
+                return null;
+            }
+            List<List<Router.Route>> fragments = new ArrayList<List<Router.Route>>(paths.size());
+            for (int i = 0; i < paths.size(); i++) {
+                if (!paths.get(i).equals(in.readUTF()) || !hashes.get(i).equals(in.readUTF())) {
+                    return null;
+                }
+                int size = in.readInt();
+                List<Router.Route> routes = new ArrayList<Router.Route>(size);
+                for (int j = 0; j < size; j++) {
+                    routes.add(readRoute(in));
+                }
+                fragments.add(routes);
+            }
+            return fragments;
+        } catch (IOException ex) {
+            logger.warn("Could not read route table cache " + file, ex);
+            return null;
+        } catch (RuntimeException ex) {
+            logger.warn("Invalid route table cache " + file, ex);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Store the routes of the given route files. The cache file is written
+     * aside, then renamed, so that concurrent readers never see a partial
+     * file.
+     */
+    void write(String key, List<String> paths, List<String> hashes, List<List<Router.Route>> fragments) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            logger.warn("Could not create route table cache directory " + directory);
+            return;
+        }
+        File file = file(key);
+        File temp = new File(directory, file.getName() + "." + System.nanoTime() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(libraryVersion);
+            out.writeInt(paths.size());
+            for (int i = 0; i < paths.size(); i++) {
+                out.writeUTF(paths.get(i));
+                out.writeUTF(hashes.get(i));
+                out.writeInt(fragments.get(i).size());
+                for (Router.Route route : fragments.get(i)) {
+                    writeRoute(out, route);
+                }
+            }
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                file.delete();
+                if (!temp.renameTo(file)) {
+                    logger.warn("Could not write route table cache " + file);
+                }
+            }
+        } catch (IOException ex) {
+            logger.warn("Could not write route table cache " + file, ex);
+        } finally {
+            IOUtils.closeQuietly(out);
+            temp.delete();
+        }
+    }
+
+    /**
+     * Cache files of other library versions are never read, nor overwritten.
+     */
+    private File file(String key) {
+        return new File(directory, "routes-" + libraryVersion.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + key + ".bin");
+    }
+
+    private static void writeRoute(DataOutputStream out, Router.Route route) throws IOException {
+        writeString(out, route.method);
+        writeString(out, route.path);
+        writeString(out, route.action);
+        writeString(out, route.host);
+        writeString(out, route.routesFile);
+        out.writeInt(route.routesFileLine);
+        writePattern(out, route.hostPattern);
+        writePattern(out, route.pattern);
+        writePattern(out, route.actionPattern);
+        out.writeInt(route.args.size());
+        for (Router.Route.Arg arg : route.args) {
+            writeString(out, arg.name);
+            writePattern(out, arg.constraint);
+            writeString(out, arg.defaultValue);
+            out.writeBoolean(Boolean.TRUE.equals(arg.optional));
+        }
+        out.writeInt(route.hostArg == null ? -1 : route.args.indexOf(route.hostArg));
+        writeStrings(out, route.actionArgs);
+        out.writeInt(route.staticArgs.size());
+        for (Map.Entry<String, String> staticArg : route.staticArgs.entrySet()) {
+            writeString(out, staticArg.getKey());
+            writeString(out, staticArg.getValue());
+        }
+        out.writeInt(route.qsParams.size());
+        for (Map.Entry<String, Router.QueryStringParamInfo> qsParam : route.qsParams.entrySet()) {
+            writeString(out, qsParam.getKey());
+            writeString(out, qsParam.getValue().getKey());
+            writeString(out, qsParam.getValue().getValue());
+            out.writeBoolean(qsParam.getValue().isNegatedKey());
+            out.writeBoolean(qsParam.getValue().isNegatedValue());
+        }
+        writeStrings(out, route.formats);
+    }
+
+    private static Router.Route readRoute(DataInputStream in) throws IOException {
+        Router.Route route = new Router.Route();
+        route.method = readString(in);
+        route.path = readString(in);
+        route.action = readString(in);
+        route.host = readString(in);
+        route.routesFile = readString(in);
+        route.routesFileLine = in.readInt();
+        route.hostPattern = readPattern(in, 0);
+        route.pattern = readPattern(in, 0);
+        route.actionPattern = readPattern(in, REFlags.IGNORE_CASE);
+        int args = in.readInt();
+        for (int i = 0; i < args; i++) {
+            Router.Route.Arg arg = new Router.Route.Arg();
+            arg.name = readString(in);
+            arg.constraint = readPattern(in, 0);
+            arg.defaultValue = readString(in);
+            arg.optional = in.readBoolean();
+            route.args.add(arg);
+        }
+        int hostArg = in.readInt();
+        if (hostArg >= 0) {
+            route.hostArg = route.args.get(hostArg);
+        }
+        route.actionArgs.addAll(readStrings(in));
+        int staticArgs = in.readInt();
+        for (int i = 0; i < staticArgs; i++) {
+            route.staticArgs.put(readString(in), readString(in));
+        }
+        int qsParams = in.readInt();
+        for (int i = 0; i < qsParams; i++) {
+            String name = readString(in);
+            Router.QueryStringParamInfo info = new Router.QueryStringParamInfo();
+            info.setKey(readString(in));
+            info.setValue(readString(in));
+            info.setNegatedKey(in.readBoolean());
+            info.setNegatedValue(in.readBoolean());
+            route.qsParams.put(name, info);
+        }
+        route.formats.addAll(readStrings(in));
+        route.computeShortcuts();
+        return route;
+    }
+
+    private static void writePattern(DataOutputStream out, Pattern pattern) throws IOException {
+        writeString(out, pattern == null ? null : pattern.toString());
+    }
+
+    private static Pattern readPattern(DataInputStream in, int flags) throws IOException {
+        String pattern = readString(in);
+        return pattern == null ? null : new Pattern(pattern, flags);
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<String> values = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static String libraryVersion() {
+        String version = null;
+        InputStream in = RouteTableCache.class.getResourceAsStream("version.properties");
+        if (in != null) {
+            try {
+                Properties properties = new Properties();
+                properties.load(in);
+                version = properties.getProperty("version");
+            } catch (IOException ex) {
+                logger.warn("Could not read the library version", ex);
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+        }
+        if (version == null || version.startsWith("${")) {
+            // not built by maven, e.g. compiled by an IDE
+            Package library = RouteTableCache.class.getPackage();
+            version = library == null ? null : library.getImplementationVersion();
+        }
+        return version == null ? "dev" : version;
+    }
+}
@@ -0,0 +1,435 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jregex.Pattern;
+
+/**
+ * Path-segment index over the route list, used by the Router to avoid
+ * evaluating every route regex for each incoming request.
+ *
+ * <p>Each route path is split on '/' and inserted in a trie. A segment is
+ * stored as:
+ * <ul>
+ * <li>a literal child, if it contains no regex meta character</li>
+ * <li>a constrained child, if it is a single <code>{&lt;regex&gt;name}</code>
+ * argument whose constraint can't match a '/'</li>
+ * <li>a catch-all entry, for anything else (the remaining part of the path is
+ * then checked by the route regex only)</li>
+ * </ul>
+ *
+ * <p>A lookup returns the set of route indexes that <em>may</em> match the
+ * given path. Those candidates are iterated in declaration order and checked
+ * with {@link Router.Route#matches}, so first-declared-wins priority is kept.
+ *
+ * @author Brian Clozel
+ * @see org.resthub.web.springmvc.router.Router
+ */
+class RouteTrie {
+
+    /**
+     * Characters that make a path segment a regex rather than a literal
+     */
+    private static final String META_CHARS = "\\.[](){}*+?^$|";
+
+    private final Node root = new Node();
+
+    private final int size;
+
+    RouteTrie(List<Router.Route> routes) {
+        this.size = routes.size();
+        for (int i = 0; i < routes.size(); i++) {
+            insert(routes.get(i), i);
+        }
+    }
+
+    /**
+     * Number of routes indexed by this trie
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the indexes of the routes whose path may match the given request
+     * path.
+     *
+     * @param path request path, starting with a "/"
+     * @return candidate route indexes, to be iterated in ascending order
+     */
+    BitSet candidates(String path) {
+        BitSet result = new BitSet(size);
+        if (path == null || !path.startsWith("/")) {
+            // only routes that can't be indexed may match that one
+            root.addCatchAll(result);
+            return result;
+        }
+        collect(root, splitPath(path.substring(1)), 0, result);
+        return result;
+    }
+
+    private void collect(Node node, String[] segments, int index, BitSet result) {
+        node.addCatchAll(result);
+        if (index == segments.length) {
+            node.addTerminals(result);
+            return;
+        }
+        String segment = segments[index];
+        if (node.literals != null) {
+            Node child = node.literals.get(segment);
+            if (child != null) {
+                collect(child, segments, index + 1, result);
+            }
+        }
+        if (node.constrained != null) {
+            for (ConstrainedChild child : node.constrained) {
+                if (child.constraint.matches(segment)) {
+                    collect(child.node, segments, index + 1, result);
+                }
+            }
+        }
+    }
+
+    private void insert(Router.Route route, int index) {
+        String path = route.path;
+        boolean optionalSlash = false;
+        if (path.endsWith("/?")) {
+            path = path.substring(0, path.length() - 2);
+            optionalSlash = true;
+        }
+        if (!path.startsWith("/")) {
+            root.catchAll.add(index);
+            return;
+        }
+        List<String> segments = splitRoutePath(path.substring(1));
+        if (segments == null) {
+            root.catchAll.add(index);
+            return;
+        }
+        Node node = root;
+        for (String segment : segments) {
+            if (isLiteral(segment)) {
+                node = node.literalChild(segment);
+                continue;
+            }
+            String constraint = segmentConstraint(segment);
+            if (constraint == null) {
+                node.catchAll.add(index);
+                return;
+            }
+            node = node.constrainedChild(constraint);
+        }
+        node.terminals.add(index);
+        if (optionalSlash) {
+            node.literalChild("").terminals.add(index);
+        }
+    }
+
+    /**
+     * Split a request path on '/', keeping empty segments
+     */
+    static String[] splitPath(String path) {
+        int count = 1;
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) == '/') {
+                count++;
+            }
+        }
+        String[] segments = new String[count];
+        int start = 0;
+        int n = 0;
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) == '/') {
+                segments[n++] = path.substring(start, i);
+                start = i + 1;
+            }
+        }
+        segments[n] = path.substring(start);
+        return segments;
+    }
+
+    /**
+     * Split a route path on '/', ignoring the '/' chars found within
+     * <code>{&lt;regex&gt;name}</code> arguments.
+     *
+     * @return the path segments, or null if arguments are not well-formed
+     */
+    static List<String> splitRoutePath(String path) {
+        List<String> segments = new ArrayList<String>();
+        int start = 0;
+        int i = 0;
+        while (i < path.length()) {
+            char c = path.charAt(i);
+            if (c == '{') {
+                int end = argumentEnd(path, i);
+                if (end < 0) {
+                    return null;
+                }
+                i = end;
+            } else if (c == '/') {
+                segments.add(path.substring(start, i));
+                start = ++i;
+            } else {
+                i++;
+            }
+        }
+        segments.add(path.substring(start));
+        return segments;
+    }
+
+    /**
+     * @return the index following the argument starting at <code>start</code>,
+     * or -1 if there's no valid argument there
+     */
+    static int argumentEnd(String path, int start) {
+        int i = start + 1;
+        if (i < path.length() && path.charAt(i) == '<') {
+            i = path.indexOf('>', i);
+            if (i < 0) {
+                return -1;
+            }
+            i++;
+        }
+        int nameStart = i;
+        while (i < path.length() && isNameChar(path.charAt(i))) {
+            i++;
+        }
+        if (i == nameStart || i >= path.length() || path.charAt(i) != '}') {
+            return -1;
+        }
+        return i + 1;
+    }
+
+    private static boolean isNameChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    static boolean isLiteral(String segment) {
+        for (int i = 0; i < segment.length(); i++) {
+            if (META_CHARS.indexOf(segment.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the argument constraint if the segment is made of a single
+     * argument that can't match a '/', null otherwise
+     */
+    private static String segmentConstraint(String segment) {
+        if (segment.length() < 3 || segment.charAt(0) != '{'
+                || argumentEnd(segment, 0) != segment.length()) {
+            return null;
+        }
+        String constraint = "[^/]+";
+        if (segment.charAt(1) == '<') {
+            constraint = segment.substring(2, segment.indexOf('>'));
+        }
+        return isSegmentSafe(constraint) ? constraint : null;
+    }
+
+    /**
+     * Conservative check: a constraint is accepted if it is a sequence of
+     * quantified atoms (literal chars, escapes or character classes) that
+     * can't match a '/' char.
+     */
+    static boolean isSegmentSafe(String constraint) {
+        if (constraint.length() == 0) {
+            return false;
+        }
+        int i = 0;
+        while (i < constraint.length()) {
+            char c = constraint.charAt(i);
+            if (c == '[') {
+                i = classEnd(constraint, i);
+                if (i < 0) {
+                    return false;
+                }
+            } else if (c == '\\') {
+                if (i + 1 >= constraint.length() || "dws".indexOf(constraint.charAt(i + 1)) < 0
+                        && !isEscapedLiteral(constraint.charAt(i + 1))) {
+                    return false;
+                }
+                i += 2;
+            } else if (c == '|') {
+                i++;
+                continue;
+            } else if (c == '/' || "().*+?{}^$".indexOf(c) >= 0) {
+                return false;
+            } else {
+                i++;
+            }
+            i = quantifierEnd(constraint, i);
+        }
+        return true;
+    }
+
+    private static boolean isEscapedLiteral(char c) {
+        return c != '/' && !isNameChar(c);
+    }
+
+    /**
+     * @return the index following the character class starting at
+     * <code>start</code>, or -1 if that class may match a '/'
+     */
+    private static int classEnd(String constraint, int start) {
+        int i = start + 1;
+        boolean negated = i < constraint.length() && constraint.charAt(i) == '^';
+        if (negated) {
+            i++;
+        }
+        boolean slashListed = false;
+        boolean first = true;
+        while (i < constraint.length()) {
+            char c = constraint.charAt(i);
+            if (c == ']' && !first) {
+                if (negated && !slashListed) {
+                    return -1;
+                }
+                return i + 1;
+            }
+            first = false;
+            char low = c;
+            if (c == '\\') {
+                if (i + 1 >= constraint.length()) {
+                    return -1;
+                }
+                char e = constraint.charAt(i + 1);
+                i += 2;
+                if ("dws".indexOf(e) >= 0) {
+                    continue;
+                }
+                if (isNameChar(e)) {
+                    // other escapes (\W, \S, \p{..}...) may match a '/'
+                    if (negated) {
+                        continue;
+                    }
+                    return -1;
+                }
+                low = e;
+            } else if (c == '[') {
+                return -1;
+            } else {
+                i++;
+            }
+            char high = low;
+            if (i + 1 < constraint.length() && constraint.charAt(i) == '-' && constraint.charAt(i + 1) != ']') {
+                high = constraint.charAt(i + 1);
+                if (high == '\\' || high == '[') {
+                    return -1;
+                }
+                i += 2;
+            }
+            if (low <= '/' && '/' <= high) {
+                if (!negated) {
+                    return -1;
+                }
+                slashListed = true;
+            }
+        }
+        return -1;
+    }
+
+    private static int quantifierEnd(String constraint, int i) {
+        if (i >= constraint.length()) {
+            return i;
+        }
+        char c = constraint.charAt(i);
+        if (c == '+' || c == '*' || c == '?') {
+            i++;
+        } else if (c == '{') {
+            int end = constraint.indexOf('}', i);
+            if (end > 0 && constraint.substring(i + 1, end).matches("[0-9]+(,[0-9]*)?")) {
+                i = end + 1;
+            }
+        }
+        // lazy or possessive modifiers
+        if (i < constraint.length() && (constraint.charAt(i) == '?' || constraint.charAt(i) == '+')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static class Node {
+
+        Map<String, Node> literals;
+        List<ConstrainedChild> constrained;
+        IntList terminals = new IntList();
+        IntList catchAll = new IntList();
+
+        Node literalChild(String segment) {
+            if (literals == null) {
+                literals = new HashMap<String, Node>(4);
+            }
+            Node child = literals.get(segment);
+            if (child == null) {
+                child = new Node();
+                literals.put(segment, child);
+            }
+            return child;
+        }
+
+        Node constrainedChild(String constraint) {
+            if (constrained == null) {
+                constrained = new ArrayList<ConstrainedChild>(2);
+            }
+            for (ConstrainedChild child : constrained) {
+                if (child.source.equals(constraint)) {
+                    return child.node;
+                }
+            }
+            ConstrainedChild child = new ConstrainedChild(constraint);
+            constrained.add(child);
+            return child.node;
+        }
+
+        void addTerminals(BitSet result) {
+            terminals.addTo(result);
+        }
+
+        void addCatchAll(BitSet result) {
+            catchAll.addTo(result);
+        }
+    }
+
+    private static class ConstrainedChild {
+
+        final String source;
+        final Pattern constraint;
+        final Node node = new Node();
+
+        ConstrainedChild(String source) {
+            this.source = source;
+            this.constraint = new Pattern(source);
+        }
+    }
+
+    /**
+     * Minimal growable list of route indexes
+     */
+    private static class IntList {
+
+        private int[] values = new int[0];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                int[] grown = new int[Math.max(4, size * 2)];
+                System.arraycopy(values, 0, grown, 0, size);
+                values = grown;
+            }
+            values[size++] = value;
+        }
+
+        void addTo(BitSet result) {
+            for (int i = 0; i < size; i++) {
+                result.set(values[i]);
+            }
+        }
+    }
+}
@@ -1,13 +1,17 @@
 package org.resthub.web.springmvc.router;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
-import java.net.URI;
 import java.net.URLDecoder;
-import java.net.URLEncoder;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -15,11 +19,9 @@ import jregex.Matcher;
 import jregex.Pattern;
 import jregex.REFlags;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.NameValuePair;
-import org.apache.http.client.utils.URLEncodedUtils;
 import org.resthub.web.springmvc.router.exceptions.NoHandlerFoundException;
 import org.resthub.web.springmvc.router.exceptions.NoRouteFoundException;
 import org.resthub.web.springmvc.router.exceptions.RouteFileParsingException;
@@ -37,18 +39,68 @@ import org.springframework.core.io.Resource;
  */
 public class Router {
 
-    static Pattern routePattern = new Pattern("^({method}GET|POST|PUT|DELETE|OPTIONS|HEAD|\\*)[(]?({headers}[^)]*)(\\))?\\s+({path}.*/[^\\s]*)\\s+({qsParams}\\[.*\\]\\s+)?({action}[^\\s(]+)({params}.+)?(\\s*)$");
     /**
-     * Pattern used to locate a method override instruction in
-     * request.querystring
-     */
-    static Pattern methodOverride = new Pattern("^.*x-http-method-override=({method}GET|PUT|POST|DELETE).*$");
-    /**
-     * Timestamp the routes file was last loaded at.
+     * Timestamp the routes of the default context were last loaded at.
+     *
+     * @deprecated use {@link RouterContext#getLastLoading()}
      */
+    @Deprecated
     public static long lastLoading = -1;
     private static final Logger logger = LoggerFactory.getLogger(Router.class);
 
+    /**
+     * Context used when no request is being routed
+     */
+    private static volatile RouterContext defaultContext = new RouterContext();
+    /**
+     * Context of the request being handled by the current thread
+     */
+    private static final ThreadLocal<RouterContext> boundContext = new ThreadLocal<RouterContext>();
+
+    /**
+     * Get the context the static Router methods work on: the context of the
+     * request being handled by the current thread, or the default context.
+     */
+    public static RouterContext current() {
+        RouterContext context = boundContext.get();
+        return context != null ? context : defaultContext;
+    }
+
+    public static RouterContext getDefaultContext() {
+        return defaultContext;
+    }
+
+    /**
+     * Set the context used when no request is being routed; a
+     * RouterHandlerMapping sets its own context when initialized.
+     */
+    public static void setDefaultContext(RouterContext context) {
+        defaultContext = context;
+        lastLoading = context.getLastLoading();
+    }
+
+    /**
+     * Keep the deprecated lastLoading field in sync with the default context.
+     */
+    static void loaded(RouterContext context) {
+        if (context == defaultContext) {
+            lastLoading = context.getLastLoading();
+        }
+    }
+
+    /**
+     * Bind a context to the current thread, for the request being handled.
+     *
+     * @param context the context, or null to unbind
+     */
+    static void bind(RouterContext context) {
+        if (context == null) {
+            boundContext.remove();
+        } else {
+            boundContext.set(context);
+        }
+    }
+
     /**
      * Parse the routes file. This is called at startup.
      *
@@ -56,13 +108,7 @@ public class Router {
      * start with. This prefix should not end with a '/' character.
      */
     public static void load(List<Resource> fileResources, String prefix) throws IOException {
-        routes.clear();
-        for (Resource res : fileResources) {
-            parse(res, prefix);
-        }
-
-        lastLoading = System.currentTimeMillis();
-        // TODO: load multiple route files
+        current().load(fileResources, prefix);
     }
 
     /**
@@ -85,10 +131,11 @@ public class Router {
      * Add a route at the given position
      */
     public static void addRoute(int position, String method, String path, String action, String params, String headers) {
-        if (position > routes.size()) {
-            position = routes.size();
+        List<Route> contextRoutes = current().getRoutes();
+        if (position > contextRoutes.size()) {
+            position = contextRoutes.size();
         }
-        routes.add(position, getRoute(method, path, action, params, headers));
+        contextRoutes.add(position, getRoute(method, path, action, params, headers));
     }
 
     /**
@@ -129,10 +176,11 @@ public class Router {
     /**
      * This is used internally when reading the route file. The order the routes
      * are added matters and we want the method to append the routes to the
-     * list.
+     * list. Each call publishes a new route table: to add many routes, build
+     * them with {@link #getRoute} and pass them to {@link #setRoutes(List)}.
      */
     public static void appendRoute(String method, String path, String action, String params, String headers, String sourceFile, int line) {
-        routes.add(getRoute(method, path, action, params, headers, sourceFile, line, null));
+        current().getRoutes().add(getRoute(method, path, action, params, headers, sourceFile, line, null));
     }
 
     /**
@@ -141,7 +189,7 @@ public class Router {
      * list.
      */
     public static void appendRoute(String method, String path, String action, String params, String headers, String sourceFile, int line, String qsParams) {
-        routes.add(getRoute(method, path, action, params, headers, sourceFile, line, qsParams));
+        current().getRoutes().add(getRoute(method, path, action, params, headers, sourceFile, line, qsParams));
     }
 
     public static Route getRoute(String method, String path, String action, String params, String headers) {
@@ -151,7 +199,7 @@ public class Router {
     public static Route getRoute(String method, String path, String action, String params, String headers, String sourceFile, int line) {
     	return getRoute(method, path, action, params, headers, sourceFile, line, null);
     }
-    
+
     public static Route getRoute(String method, String path, String action, String params, String headers, String sourceFile, int line, String qsParams) {
         Route route = new Route();
         route.method = method;
@@ -174,7 +222,16 @@ public class Router {
      * Add a new route at the beginning of the route list
      */
     public static void prependRoute(String method, String path, String action, String params, String headers) {
-        routes.add(0, getRoute(method, path, action, params, headers));
+        current().getRoutes().add(0, getRoute(method, path, action, params, headers));
+    }
+
+    /**
+     * Replace the routes of the current context at once.
+     *
+     * @see RouterContext#setRoutes(List)
+     */
+    public static void setRoutes(List<Route> routes) {
+        current().setRoutes(routes);
     }
 
     /**
@@ -183,110 +240,254 @@ public class Router {
      * @param fileResource
      * @param prefix The prefix that the path of all routes in this route file
      * start with. This prefix should not end with a '/' character.
+     * @return the routes of the file, in declaration order
      * @throws IOException
      */
-    static void parse(Resource fileResource, String prefix) throws IOException {
+    static List<Route> parse(Resource fileResource, String prefix) throws IOException {
+        return parse(read(fileResource), prefix, location(fileResource));
+    }
 
-        String fileAbsolutePath = fileResource.getFile().getAbsolutePath();
-        String content = IOUtils.toString(fileResource.getInputStream());
+    /**
+     * Read the content of a route file, as RouterContext loads it.
+     */
+    static String read(Resource fileResource) throws IOException {
+        InputStream in = fileResource.getInputStream();
+        try {
+            return IOUtils.toString(in);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
 
-        parse(content, prefix, fileAbsolutePath);
+    /**
+     * Get the location of a route file: its absolute path if it is on the
+     * file system, or else its URL (e.g. for route files inside a jar).
+     */
+    static String location(Resource fileResource) throws IOException {
+        try {
+            return fileResource.getFile().getAbsolutePath();
+        } catch (FileNotFoundException ex) {
+            return fileResource.getURL().toString();
+        }
     }
 
-    static void parse(String content, String prefix, String fileAbsolutePath) throws IOException {
-        int lineNumber = 0;
-        for (String line : content.split("\n")) {
-            lineNumber++;
-            line = line.trim().replaceAll("\\s+", " ");
-            if (line.length() == 0 || line.startsWith("#")) {
-                continue;
+    static List<Route> parse(String content, String prefix, String fileAbsolutePath) throws IOException {
+        return parse(content, prefix, fileAbsolutePath, null);
+    }
+
+    /**
+     * Parse a route file content.
+     *
+     * @param errors if not null, collects the invalid lines and route
+     * definitions instead of logging or throwing them
+     */
+    static List<Route> parse(String content, String prefix, String fileAbsolutePath, List<String> errors) throws IOException {
+        return parse(content, 0, content.length(), 1, prefix, fileAbsolutePath, errors);
+    }
+
+    /**
+     * Parse some lines of a route file.
+     *
+     * @param content the route file content
+     * @param start index of the first line to parse in content
+     * @param end index after the last line to parse in content
+     * @param firstLine number of the first line to parse in the route file
+     * @param errors if not null, collects the invalid lines and route
+     * definitions instead of logging or throwing them
+     */
+    static List<Route> parse(String content, int start, int end, int firstLine, String prefix, String fileAbsolutePath, List<String> errors) {
+        List<Route> parsed = new ArrayList<Route>();
+        RouteFileTokenizer tokenizer = new RouteFileTokenizer();
+        int lineNumber = firstLine;
+        while (start <= end) {
+            int lineEnd = content.indexOf('\n', start);
+            if (lineEnd < 0 || lineEnd > end) {
+                lineEnd = end;
             }
-            Matcher matcher = routePattern.matcher(line);
-            if (matcher.matches()) {
-            	
-                String action = matcher.group("action");
-                String method = matcher.group("method");
-                String path = prefix + matcher.group("path");
-                String params = matcher.group("params");
-                String headers = matcher.group("headers");
-                String qsParams = matcher.group("qsParams");
-                appendRoute(method, path, action, params, headers, fileAbsolutePath, lineNumber, qsParams);
+            parseLine(tokenizer, content, start, lineEnd, lineNumber++, prefix, fileAbsolutePath, parsed, errors);
+            start = lineEnd + 1;
+        }
+        return parsed;
+    }
+
+    private static void parseLine(RouteFileTokenizer tokenizer, CharSequence text, int start, int end, int lineNumber,
+            String prefix, String fileAbsolutePath, List<Route> parsed, List<String> errors) {
+        int result = tokenizer.tokenize(text, start, end);
+        if (result == RouteFileTokenizer.ROUTE) {
+            String path = prefix + tokenizer.path;
+            if (errors == null) {
+                parsed.add(getRoute(tokenizer.method, path, tokenizer.action, tokenizer.params, tokenizer.headers,
+                        fileAbsolutePath, lineNumber, tokenizer.qsParams));
             } else {
-                logger.error("Invalid route definition : " + line);
+                try {
+                    parsed.add(getRoute(tokenizer.method, path, tokenizer.action, tokenizer.params, tokenizer.headers,
+                            fileAbsolutePath, lineNumber, tokenizer.qsParams));
+                } catch (RuntimeException ex) {
+                    errors.add(fileAbsolutePath + ":" + lineNumber + ": " + ex.getMessage() + " : "
+                            + text.subSequence(start, end).toString().trim());
+                }
+            }
+        } else if (result == RouteFileTokenizer.INVALID) {
+            String position = fileAbsolutePath + ":" + lineNumber + ":" + tokenizer.errorColumn;
+            String line = text.subSequence(start, end).toString().trim();
+            if (errors == null) {
+                logger.error("Invalid route definition at " + position + " (" + tokenizer.error + ") : " + line);
+            } else {
+                errors.add(position + ": Invalid route definition (" + tokenizer.error + ") : " + line);
             }
         }
     }
 
     public static void detectChanges(List<Resource> fileResources, String prefix) throws IOException {
+        current().detectChanges(fileResources, prefix);
+    }
+    /**
+     * Live view of the routes of the current context. Each change copies the
+     * route list and publishes a new route table: use <code>addAll</code> or
+     * {@link #setRoutes(List)} to change many routes at once.
+     *
+     * @see #current()
+     */
+    public static final List<Route> routes = new AbstractList<Route>() {
 
-        boolean hasChanged = false;
+        @Override
+        public Route get(int index) {
+            return current().getRoutes().get(index);
+        }
 
-        for (Resource res : fileResources) {
-            if (FileUtils.isFileNewer(res.getFile(), lastLoading)) {
-                hasChanged = true;
-                break;
-            }
+        @Override
+        public int size() {
+            return current().getRoutes().size();
         }
 
-        if (hasChanged) {
-            load(fileResources, prefix);
+        @Override
+        public Iterator<Route> iterator() {
+            return current().getRoutes().iterator();
         }
-    }
-    public static List<Route> routes = new ArrayList<Route>(500);
 
-    public static Route route(HTTPRequestAdapter request) {
-        if (logger.isTraceEnabled()) {
-            logger.trace("Route: " + request.path + " - " + request.querystring);
+        @Override
+        public void add(int index, Route route) {
+            current().getRoutes().add(index, route);
         }
-        // request method may be overriden if a x-http-method-override parameter is given
-        if (request.querystring != null && methodOverride.matches(request.querystring)) {
-            Matcher matcher = methodOverride.matcher(request.querystring);
-            if (matcher.matches()) {
-                if (logger.isTraceEnabled()) {
-                    logger.trace("request method %s overriden to %s ", request.method, matcher.group("method"));
-                }
-                request.method = matcher.group("method");
-            }
+
+        @Override
+        public boolean addAll(int index, Collection<? extends Route> added) {
+            return current().getRoutes().addAll(index, added);
         }
-        
-        // extract query params
-        List<NameValuePair> queryParams;
-        try {
-	        URI uri = new URI("?" + request.querystring);
-	        queryParams = URLEncodedUtils.parse(uri, "utf-8");
-		}
-		catch(Exception ex) {
-			throw new RouteFileParsingException("RouteFile exception while parsing querystring", ex);
-		}	
-        
-        for (Route route : routes) {
-            String format = request.format;
-            String host = request.host;
-            Map<String, String> args = route.matches(request.method, request.path, format, host, queryParams);
-            if (args != null) {
-                request.routeArgs = args;
-                request.action = route.action;
-                if (args.containsKey("format")) {
-                    request.setFormat(args.get("format"));
-                }
-                if (request.action.indexOf("{") > -1) { // more optimization ?
-                    for (String arg : request.routeArgs.keySet()) {
-                        request.action = request.action.replace("{" + arg + "}", request.routeArgs.get(arg));
-                    }
-                }
-                return route;
-            }
+
+        @Override
+        public Route set(int index, Route route) {
+            return current().getRoutes().set(index, route);
         }
-        // Not found - if the request was a HEAD, let's see if we can find a corresponding GET
-        if (request.method.equalsIgnoreCase("head")) {
-            request.method = "GET";
-            Route route = route(request);
-            request.method = "HEAD";
-            if (route != null) {
-                return route;
-            }
+
+        @Override
+        public Route remove(int index) {
+            return current().getRoutes().remove(index);
+        }
+
+        @Override
+        public void clear() {
+            current().getRoutes().clear();
         }
-        throw new NoRouteFoundException(request.method, request.path);
+    };
+
+    /**
+     * Choose the path matching engine: a combined automaton built over all
+     * route paths, or path tries checked with each route regex (default).
+     */
+    public static void setAutomatonMatching(boolean automatonMatching) {
+        current().setAutomatonMatching(automatonMatching);
+    }
+
+    public static boolean isAutomatonMatching() {
+        return current().isAutomatonMatching();
+    }
+
+    /**
+     * @see RouterContext#setRouteCacheSize(int)
+     */
+    public static void setRouteCacheSize(int size) {
+        current().setRouteCacheSize(size);
+    }
+
+    public static int getRouteCacheSize() {
+        return current().getRouteCacheSize();
+    }
+
+    public static LruCache<?, ?> getRouteCache() {
+        return current().getRouteCache();
+    }
+
+    /**
+     * @see RouterContext#setRouteMissCacheSize(int)
+     */
+    public static void setRouteMissCacheSize(int size) {
+        current().setRouteMissCacheSize(size);
+    }
+
+    public static int getRouteMissCacheSize() {
+        return current().getRouteMissCacheSize();
+    }
+
+    public static LruCache<?, ?> getRouteMissCache() {
+        return current().getRouteMissCache();
+    }
+
+    /**
+     * @see RouterContext#setReverseCacheSize(int)
+     */
+    public static void setReverseCacheSize(int size) {
+        current().setReverseCacheSize(size);
+    }
+
+    public static int getReverseCacheSize() {
+        return current().getReverseCacheSize();
+    }
+
+    public static LruCache<?, ?> getReverseCache() {
+        return current().getReverseCache();
+    }
+
+    /**
+     * Get the current route table snapshot.
+     */
+    static RouteTable routeTable() {
+        return current().routeTable();
+    }
+
+    /**
+     * Get the dispatch tables of the current route table.
+     */
+    static RouteIndex routeIndex() {
+        return current().routeIndex();
+    }
+
+    /**
+     * Returned by {@link #findRoute(HTTPRequestAdapter)} when no route matches
+     * the request
+     */
+    public static final Route NO_ROUTE = new Route();
+
+    /**
+     * Find the route matching the given request, and update the request with
+     * its action and arguments.
+     *
+     * @throws NoRouteFoundException if no route matches the request
+     * @see #findRoute(HTTPRequestAdapter)
+     */
+    public static Route route(HTTPRequestAdapter request) {
+        return current().route(request);
+    }
+
+    /**
+     * Find the route matching the given request, and update the request with
+     * its action and arguments. Unlike {@link #route(HTTPRequestAdapter)}, no
+     * exception is thrown for unmatched requests.
+     *
+     * @return the matching route, or {@link #NO_ROUTE} if no route matches
+     */
+    public static Route findRoute(HTTPRequestAdapter request) {
+        return current().findRoute(request);
     }
 
     public static Map<String, String> route(String method, String path) {
@@ -298,14 +499,7 @@ public class Router {
     }
 
     public static Map<String, String> route(String method, String path, String headers, String host) {
-        for (Route route : routes) {
-            Map<String, String> args = route.matches(method, path, headers, host, null);
-            if (args != null) {
-                args.put("action", route.action);
-                return args;
-            }
-        }
-        return new HashMap<String, String>(16);
+        return current().route(method, path, headers, host);
     }
 
     public static ActionDefinition reverse(String action) {
@@ -323,6 +517,57 @@ public class Router {
     }
 
     public static ActionDefinition reverse(String action, Map<String, Object> args) {
+        return current().reverse(action, args);
+    }
+
+    /**
+     * Reverse route the given action, like {@link #reverse(String)}, without
+     * throwing an exception if no route reverses it.
+     *
+     * @return the action definition, or null if no route reverses the action
+     */
+    public static ActionDefinition tryReverse(String action) {
+        return tryReverse(action, new HashMap<String, Object>(16));
+    }
+
+    /**
+     * Reverse route the given action, like {@link #reverse(String, Map)},
+     * without throwing an exception if no route reverses it.
+     *
+     * @return the action definition, or null if no route reverses the action
+     */
+    public static ActionDefinition tryReverse(String action, Map<String, Object> args) {
+        return current().tryReverse(action, args);
+    }
+
+    /**
+     * Resolve an action once, to generate its URLs in loops.
+     *
+     * @see RouterContext#handle(String)
+     */
+    public static ReverseHandle handle(String action) {
+        return current().handle(action);
+    }
+
+    /**
+     * Reverse route the given action against its candidate routes, in
+     * priority order.
+     */
+    static ActionDefinition reverse(List<Route> routes, String action, Map<String, Object> args) {
+        ActionDefinition actionDefinition = tryReverse(routes, action, args);
+        if (actionDefinition == null) {
+            throw new NoHandlerFoundException(action, args);
+        }
+        return actionDefinition;
+    }
+
+    /**
+     * Reverse route the given action against its candidate routes, in
+     * priority order.
+     *
+     * @return the action definition, or null if no route reverses the action
+     */
+    static ActionDefinition tryReverse(List<Route> routes, String action, Map<String, Object> args) {
 
         Map<String, Object> argsbackup = new HashMap<String, Object>(args);
         for (Route route : routes) {
@@ -336,199 +581,201 @@ public class Router {
                         }
                         args.put(group, v.toLowerCase());
                     }
-                    List<String> inPathArgs = new ArrayList<String>(16);
-                    boolean allRequiredArgsAreHere = true;
-                    // les noms de parametres matchent ils ?
-                    for (Route.Arg arg : route.args) {
-                        inPathArgs.add(arg.name);
-                        Object value = args.get(arg.name);
-                        if (value == null) {
-                            // This is a hack for reverting on hostname that are a regex expression.
-                            // See [#344] for more into. This is not optimal and should retough. However,
-                            // it allows us to do things like {(.*)}.domain.com
-                            String host = route.host.replaceAll("\\{", "").replaceAll("\\}", "");
-                            if (host.equals(arg.name) || host.matches(arg.name)) {
-                                args.put(arg.name, "");
-                                value = "";
-                            } else {
-                                allRequiredArgsAreHere = false;
-                                break;
-                            }
-                        } else {
-                            if (value instanceof List<?>) {
-                                @SuppressWarnings("unchecked")
-                                List<Object> l = (List<Object>) value;
-                                value = l.get(0);
-                            }
-                            if (!value.toString().startsWith(":") && !arg.constraint.matches(value.toString())) {
-                                allRequiredArgsAreHere = false;
-                                break;
-                            }
-                        }
-                    }
-                    // les parametres codes en dur dans la route matchent-ils ?
-                    for (String staticKey : route.staticArgs.keySet()) {
-                        if (staticKey.equals("format")) {
-                            if (!HTTPRequestAdapter.current.get().format.equals(route.staticArgs.get("format"))) {
-                                allRequiredArgsAreHere = false;
-                                break;
-                            }
-                            continue; // format is a special key
-                        }
-                        if (!args.containsKey(staticKey) || (args.get(staticKey) == null)
-                                || !args.get(staticKey).toString().equals(route.staticArgs.get(staticKey))) {
-                            allRequiredArgsAreHere = false;
-                            break;
-                        }
-                    }
-                    
-                    // Validate querystring parameters
-                    for(QueryStringParamInfo qsParamInfo : route.qsParams.values()) {
-                        
-                        // querystring param must be there
-                        if(!qsParamInfo.isNegatedKey()) {
-                            if(!args.containsKey(qsParamInfo.getKey())) {
-                                allRequiredArgsAreHere = false;
-                                break;
-                            }
-                            
-                            // values match? (null => any value is ok)
-                            if(qsParamInfo.getValue() != null) {
-                                if(qsParamInfo.getValue().equals(args.get(qsParamInfo.getKey()))) {
-                                    if(qsParamInfo.isNegatedValue()) {
-                                        allRequiredArgsAreHere = false;
-                                        break;        
-                                    }
-                                } else {
-                                    // value has to match except if the same key is also used as a staticArg
-                                    if(!qsParamInfo.isNegatedValue() && !route.staticArgs.containsKey(qsParamInfo.getKey())) {
-                                        allRequiredArgsAreHere = false;
-                                        break;        
-                                    }
-                                }
-                            }
-                        // querystring param must NOT be there
-                        } else if(args.containsKey(qsParamInfo.getKey())) {
-                            allRequiredArgsAreHere = false;
-                            break;    
-                        }
-                    }
-
-                    if (allRequiredArgsAreHere) {
-
-                        StringBuilder queryString = new StringBuilder();
-                        String path = route.path;
-                        String host = route.host;
-                        if (path.endsWith("/?")) {
-                            path = path.substring(0, path.length() - 2);
-                        }
-                        for (Map.Entry<String, Object> entry : args.entrySet()) {
-                            String key = entry.getKey();
-                            Object value = entry.getValue();
-                            if (inPathArgs.contains(key) && value != null) {
-                                if (List.class.isAssignableFrom(value.getClass())) {
-                                    @SuppressWarnings("unchecked")
-                                    List<Object> vals = (List<Object>) value;
-                                    try {
-                                        path = path.replaceAll("\\{(<[^>]+>)?" + key + "\\}", URLEncoder.encode(vals.get(0).toString().replace("$", "\\$"), "utf-8"));
-                                    } catch (UnsupportedEncodingException e) {
-                                        throw new RouteFileParsingException("RouteFile encoding exception", e);
-                                    }
-                                } else {
-                                    try {
-                                        path = path.replaceAll("\\{(<[^>]+>)?" + key + "\\}", URLEncoder.encode(value.toString().replace("$", "\\$"), "utf-8"));
-                                        host = host.replaceAll("\\{(<[^>]+>)?" + key + "\\}", URLEncoder.encode(value.toString().replace("$", "\\$"), "utf-8"));
-                                    } catch (UnsupportedEncodingException e) {
-                                        throw new RouteFileParsingException("RouteFile encoding exception", e);
-                                    }
-                                }
-                            } else if (route.staticArgs.containsKey(key)) {
-                                // Do nothing -> The key is static
-                            } else if (value != null) {
-                            	// We prefere the qsParams over other parameters with the same key
-                            	// (and those qsParams will be added soon..)
-                            	if(!route.qsParams.containsKey(key)) {
-                            		addToQuerystring(queryString, key, value);
-                            	}
-                            }
-                        }
-                        
-                        // We add the qsParams to the querystring
-                        for(QueryStringParamInfo qsParamInfo : route.qsParams.values()) {
-                            
-                            if(qsParamInfo.isNegatedKey()) {
-                                continue;
-                            }
-
-                            String valueToUse;
-                            // If the same key is also used as a staticArgs, we use the value of the qsParam as specified
-                            // on the route itself. Except if any value is acceptable for the qsParam, then we'll use 
-                            // the staticArgs's value.
-                            if(route.staticArgs.containsKey(qsParamInfo.getKey()) && qsParamInfo.getValue() != null) {
-                                valueToUse = qsParamInfo.getValue();
-                            // Otherwise, we use the value specified by the caller so a qsParam
-                            // with no specific value required will use this value.
-                            } else {
-                                valueToUse = (String)args.get(qsParamInfo.getKey());
-                            }
-                            valueToUse = (valueToUse != null) ? valueToUse : "";
-                            
-                            addToQuerystring(queryString, qsParamInfo.getKey(), valueToUse);    
-                        }
-                        
-                        String qs = queryString.toString();
-                        if (qs.endsWith("&")) {
-                            qs = qs.substring(0, qs.length() - 1);
-                        }
+                    if (reverses(route, args)) {
+                        StringBuilder url = new StringBuilder(route.path.length() + 32);
+                        appendReverseUrl(route, args, url);
                         ActionDefinition actionDefinition = new ActionDefinition();
-                        actionDefinition.url = qs.length() == 0 ? path : path + "?" + qs;
+                        actionDefinition.url = url.toString();
                         actionDefinition.method = route.method == null || route.method.equals("*") ? "GET" : route.method.toUpperCase();
                         actionDefinition.star = "*".equals(route.method);
                         actionDefinition.action = action;
                         actionDefinition.args = argsbackup;
-                        actionDefinition.host = host;
+                        actionDefinition.host = reverseHost(route, args);
                         return actionDefinition;
                     }
                 }
             }
         }
-        throw new NoHandlerFoundException(action, args);
+        return null;
+    }
+
+    /**
+     * Check whether a route matching the reversed action can be filled with
+     * the given arguments. Host arguments of regex hosts get an empty value
+     * if missing.
+     */
+    static boolean reverses(Route route, Map<String, Object> args) {
+        // les noms de parametres matchent ils ?
+        for (Route.Arg arg : route.args) {
+            Object value = args.get(arg.name);
+            if (value == null) {
+                if (isHostDefault(route, arg)) {
+                    args.put(arg.name, "");
+                } else {
+                    return false;
+                }
+            } else {
+                if (value instanceof List<?>) {
+                    @SuppressWarnings("unchecked")
+                    List<Object> l = (List<Object>) value;
+                    value = l.get(0);
+                }
+                if (!value.toString().startsWith(":") && !arg.constraint.matches(value.toString())) {
+                    return false;
+                }
+            }
+        }
+        // les parametres codes en dur dans la route matchent-ils ?
+        for (String staticKey : route.staticArgs.keySet()) {
+            if (staticKey.equals("format")) {
+                if (!HTTPRequestAdapter.current.get().format.equals(route.staticArgs.get("format"))) {
+                    return false;
+                }
+                continue; // format is a special key
+            }
+            if (!args.containsKey(staticKey) || (args.get(staticKey) == null)
+                    || !args.get(staticKey).toString().equals(route.staticArgs.get(staticKey))) {
+                return false;
+            }
+        }
+
+        // Validate querystring parameters
+        for(QueryStringParamInfo qsParamInfo : route.qsParams.values()) {
+
+            // querystring param must be there
+            if(!qsParamInfo.isNegatedKey()) {
+                if(!args.containsKey(qsParamInfo.getKey())) {
+                    return false;
+                }
+
+                // values match? (null => any value is ok)
+                if(qsParamInfo.getValue() != null) {
+                    if(qsParamInfo.getValue().equals(args.get(qsParamInfo.getKey()))) {
+                        if(qsParamInfo.isNegatedValue()) {
+                            return false;
+                        }
+                    } else {
+                        // value has to match except if the same key is also used as a staticArg
+                        if(!qsParamInfo.isNegatedValue() && !route.staticArgs.containsKey(qsParamInfo.getKey())) {
+                            return false;
+                        }
+                    }
+                }
+            // querystring param must NOT be there
+            } else if(args.containsKey(qsParamInfo.getKey())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check whether a missing argument gets an empty value, being the
+     * route host regex.
+     */
+    static boolean isHostDefault(Route route, Route.Arg arg) {
+        // This is a hack for reverting on hostname that are a regex expression.
+        // See [#344] for more into. This is not optimal and should retough. However,
+        // it allows us to do things like {(.*)}.domain.com
+        String host = route.host.replaceAll("\\{", "").replaceAll("\\}", "");
+        return host.equals(arg.name) || host.matches(arg.name);
+    }
+
+    /**
+     * Append the path and query string of a route reversed with the given
+     * arguments.
+     *
+     * @see #reverses(Route, Map)
+     */
+    static void appendReverseUrl(Route route, Map<String, Object> args, StringBuilder url) {
+        route.pathTemplate.fill(url, args, true);
+        int queryStart = url.length();
+        for (Map.Entry<String, Object> entry : args.entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+            if (route.hasArg(key) && value != null) {
+                // Already in the path or host
+            } else if (route.staticArgs.containsKey(key)) {
+                // Do nothing -> The key is static
+            } else if (value != null) {
+            	// We prefere the qsParams over other parameters with the same key
+            	// (and those qsParams will be added soon..)
+            	if(!route.qsParams.containsKey(key)) {
+            		addToQuerystring(url, key, value);
+            	}
+            }
+        }
+
+        // We add the qsParams to the querystring
+        for(QueryStringParamInfo qsParamInfo : route.qsParams.values()) {
+
+            if(qsParamInfo.isNegatedKey()) {
+                continue;
+            }
+
+            String valueToUse;
+            // If the same key is also used as a staticArgs, we use the value of the qsParam as specified
+            // on the route itself. Except if any value is acceptable for the qsParam, then we'll use
+            // the staticArgs's value.
+            if(route.staticArgs.containsKey(qsParamInfo.getKey()) && qsParamInfo.getValue() != null) {
+                valueToUse = qsParamInfo.getValue();
+            // Otherwise, we use the value specified by the caller so a qsParam
+            // with no specific value required will use this value.
+            } else {
+                valueToUse = (String)args.get(qsParamInfo.getKey());
+            }
+            valueToUse = (valueToUse != null) ? valueToUse : "";
+
+            addToQuerystring(url, qsParamInfo.getKey(), valueToUse);
+        }
+
+        // each param is preceded by '&', the first one starts the query string
+        if (url.length() > queryStart) {
+            url.setCharAt(queryStart, '?');
+        }
+    }
+
+    /**
+     * Get the host of a route reversed with the given arguments.
+     */
+    static String reverseHost(Route route, Map<String, Object> args) {
+        if (route.hostTemplate.isLiteral()) {
+            return route.host;
+        }
+        StringBuilder filledHost = new StringBuilder(route.host.length() + 16);
+        // the first value of list arguments only fills the path
+        route.hostTemplate.fill(filledHost, args, false);
+        return filledHost.toString();
     }
     
-    private static void addToQuerystring(StringBuilder queryString, String key, Object value) {
+    /**
+     * Append a query string param to the given URL, preceded by '&amp;'.
+     */
+    private static void addToQuerystring(StringBuilder url, String key, Object value) {
         if (List.class.isAssignableFrom(value.getClass())) {
             @SuppressWarnings("unchecked")
             List<Object> vals = (List<Object>) value;
             for (Object object : vals) {
-                try {
-                    queryString.append(URLEncoder.encode(key, "utf-8"));
-                    queryString.append("=");
-                    if (object.toString().startsWith(":")) {
-                        queryString.append(object.toString());
-                    } else {
-                        queryString.append(URLEncoder.encode(object.toString() + "", "utf-8"));
-                    }
-                    queryString.append("&");
-                } catch (UnsupportedEncodingException ex) {
-                }
+                addParam(url, key, object.toString());
             }
 //        } else if (value.getClass().equals(Default.class)) {
 //            // Skip defaults in queryString
         } else {
-            try {
-                queryString.append(URLEncoder.encode(key, "utf-8"));
-                queryString.append("=");
-                if (value.toString().startsWith(":")) {
-                    queryString.append(value.toString());
-                } else {
-                    queryString.append(URLEncoder.encode(value.toString() + "", "utf-8"));
-                }
-                queryString.append("&");
-            } catch (UnsupportedEncodingException ex) {
-            }
+            addParam(url, key, value.toString());
         }	
     }
 
+    private static void addParam(StringBuilder url, String key, String value) {
+        url.append('&');
+        UrlTemplate.encode(key, url);
+        url.append('=');
+        if (value.startsWith(":")) {
+            url.append(value);
+        } else {
+            UrlTemplate.encode(value, url);
+        }
+    }
+
     public static class ActionDefinition {
 
         /**
@@ -633,6 +880,45 @@ public class Router {
         List<String> formats = new ArrayList<String>(1);
         String host;
         Arg hostArg = null;
+        /**
+         * Argument names of a match, as returned by {@link RouteArgs}: path
+         * arguments (the host one excluded), host argument and static args
+         */
+        String[] argNames;
+        /**
+         * Value source of each argument name: index of the path argument,
+         * HOST_ARG or STATIC_ARG
+         */
+        int[] argSources;
+        /**
+         * Value of each static argument name, by slot
+         */
+        String[] argStaticValues;
+        /**
+         * Slot of the host argument, -1 if none
+         */
+        int hostSlot;
+        /**
+         * Group id of each path argument in the route pattern
+         */
+        int[] argGroupIds;
+        /**
+         * Part of the route host to strip from the request host to get the
+         * host argument
+         */
+        String hostPrefix;
+        static final int HOST_ARG = -1;
+        static final int STATIC_ARG = -2;
+        /**
+         * Request paths matched by this route if it has no argument nor
+         * condition (format, querystring param or host pattern), else null
+         */
+        String[] staticPaths;
+        /**
+         * Path and host filled by reverse routing
+         */
+        UrlTemplate pathTemplate;
+        UrlTemplate hostTemplate;
         public int routesFileLine;
         public String routesFile;
         static Pattern customRegexPattern = new Pattern("\\{([a-zA-Z_0-9]+)\\}");
@@ -704,6 +990,89 @@ public class Router {
                 }
             }
             actionPattern = new Pattern(patternString, REFlags.IGNORE_CASE);
+
+            computeShortcuts();
+        }
+
+        /**
+         * Compute the argument slots, static paths and URL templates of this
+         * route, derived from its patterns and arguments.
+         */
+        void computeShortcuts() {
+            computeArgSlots();
+
+            List<String> names = new ArrayList<String>(args.size());
+            for (Arg arg : args) {
+                names.add(arg.name);
+            }
+            this.pathTemplate = new UrlTemplate(path.endsWith("/?") ? path.substring(0, path.length() - 2) : path, names);
+            this.hostTemplate = new UrlTemplate(host, names);
+
+            this.staticPaths = null;
+            if (args.isEmpty() && qsParams.isEmpty() && formats.isEmpty() && hasLiteralHost()) {
+                String literalPath = path.endsWith("/?") ? path.substring(0, path.length() - 2) : path;
+                if (RouteTrie.isLiteral(literalPath)) {
+                    this.staticPaths = literalPath.equals(path)
+                            ? new String[]{path} : new String[]{literalPath, literalPath + "/"};
+                }
+            }
+        }
+
+        /**
+         * Resolve once how each argument of a match gets its value; later
+         * sources override earlier ones, like static args used to override
+         * path arguments.
+         */
+        private void computeArgSlots() {
+            List<String> pathArgs = pathArgNames();
+            Map<String, Integer> sources = new LinkedHashMap<String, Integer>();
+            argGroupIds = new int[pathArgs.size()];
+            for (int i = 0; i < argGroupIds.length; i++) {
+                argGroupIds[i] = pattern.groupId(pathArgs.get(i));
+                sources.put(pathArgs.get(i), i);
+            }
+            hostPrefix = null;
+            if (hostArg != null) {
+                hostPrefix = hostArg.defaultValue.replaceAll("\\{.*}", "");
+                sources.put(hostArg.name, HOST_ARG);
+            }
+            for (String name : staticArgs.keySet()) {
+                sources.put(name, STATIC_ARG);
+            }
+            argNames = new String[sources.size()];
+            argSources = new int[sources.size()];
+            argStaticValues = new String[sources.size()];
+            hostSlot = -1;
+            int slot = 0;
+            for (Map.Entry<String, Integer> source : sources.entrySet()) {
+                argNames[slot] = source.getKey();
+                argSources[slot] = source.getValue();
+                if (source.getValue() == STATIC_ARG) {
+                    argStaticValues[slot] = staticArgs.get(source.getKey());
+                } else if (source.getValue() == HOST_ARG) {
+                    hostSlot = slot;
+                }
+                slot++;
+            }
+        }
+
+        /**
+         * @return true if the path or host of this route has the given argument
+         */
+        boolean hasArg(String name) {
+            for (int i = 0; i < args.size(); i++) {
+                if (args.get(i).name.equals(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return true if this route has no host or a host without any pattern
+         */
+        boolean hasLiteralHost() {
+            return host.length() == 0 || RouteTrie.isLiteral(host.replace(".", ""));
         }
 
         public void addQsParams(String qsParams) {
@@ -783,100 +1152,101 @@ public class Router {
         public Map<String, String> matches(String method, String path, String accept, String domain, List<NameValuePair> queryParams) {
             // If method is HEAD and we have a GET
             if (method == null || this.method.equals("*") || method.equalsIgnoreCase(this.method) || (method.equalsIgnoreCase("head") && ("get").equalsIgnoreCase(this.method))) {
+                return matchesRequest(path, accept, domain, QueryString.of(queryParams));
+            }
+            return null;
+        }
 
-                Matcher matcher = pattern.matcher(path);
-                
-                boolean hostMatches = (domain == null);
-                if (domain != null) {
-                    Matcher hostMatcher = hostPattern.matcher(domain);
-                    hostMatches = hostMatcher.matches();
+        /**
+         * Check if the parts of a HTTP request equal this Route, the HTTP
+         * method being already checked by the dispatch table.
+         */
+        RouteArgs matchesRequest(String path, String accept, String domain, QueryString queryParams) {
+            Matcher matcher = pattern.matcher(path);
+            if (!matcher.matches() || !matchesConditions(accept, domain, queryParams)) {
+                return null;
+            }
+            int[] offsets = new int[argGroupIds.length * 2];
+            for (int i = 0; i < argGroupIds.length; i++) {
+                if (matcher.isCaptured(argGroupIds[i])) {
+                    offsets[2 * i] = matcher.start(argGroupIds[i]);
+                    offsets[2 * i + 1] = matcher.end(argGroupIds[i]);
+                } else {
+                    offsets[2 * i] = -1;
+                    offsets[2 * i + 1] = -1;
                 }
-                // Extract the host variable
-                if (matcher.matches() && contains(accept) && hostMatches) {
-
-                    // Validate querystring params
-                    if(queryParams!= null && this.qsParams != null && this.qsParams.size() > 0) {
-                        for(String requiredParamKey : this.qsParams.keySet()) {
-                            QueryStringParamInfo requestParamInfo = this.qsParams.get(requiredParamKey);
-                            
-                            Boolean requiredParamValid = null;
-                            boolean paramKeyFoundInQuery = false;
-                            for(NameValuePair oneNameValuePair : queryParams) {
-                                if(requestParamInfo.getKey().equals(oneNameValuePair.getName())) {
-                                    paramKeyFoundInQuery = true;
-                                    
-                                    if(requestParamInfo.isNegatedKey()) {
-                                        requiredParamValid = false;
-                                        break;
-                                    }
-                                    
-                                    // any value is ok
-                                    if(requestParamInfo.getValue() == null) {
-                                        requiredParamValid = true;
-                                        break;
-                                    }
-                                    
-                                    // oneNameValuePair's NULL value (is it even possible?) is accepted if the qsParam has a "key=" form
-                                    if(oneNameValuePair.getValue() == null && (requestParamInfo.getValue().equals("") && !requestParamInfo.isNegatedValue())) {
-                                        requiredParamValid = true;
-                                        break;    
-                                    }
-
-                                    // regular cases
-                                    if(requestParamInfo.getValue().equals(oneNameValuePair.getValue())) {
-                                        if(requestParamInfo.isNegatedValue()) {
-                                            requiredParamValid = false;
-                                            break;
-                                        } else {
-                                            requiredParamValid = true;
-                                            break;
-                                        }
-                                    } else {
-                                        if(requestParamInfo.isNegatedValue()) {
-                                            requiredParamValid = true;
-                                            break;
-                                        } else {
-                                            requiredParamValid = false;
-                                            break;
-                                        }    
-                                    }
-                                }
-                            }
-                            
-                            // other cases to validate
-                            if(requiredParamValid == null) {
-                                if(!paramKeyFoundInQuery && requestParamInfo.isNegatedKey()) {
-                                    requiredParamValid = true;
-                                } else {
-                                    requiredParamValid = false;
-                                }
-                            }
-
-                            if(!requiredParamValid) {
-                                return null;
-                            }
-                        }
-                    }
-                	
-                    Map<String, String> localArgs = new HashMap<String, String>();
-                    for (Arg arg : args) {
-                        // FIXME: Careful with the arguments that are not matching as they are part of the hostname
-                        // Defaultvalue indicates it is a one of these urls. This is a trick and should be changed.
-                        if (arg.defaultValue == null) {
-                            localArgs.put(arg.name, matcher.group(arg.name));
+            }
+            return new RouteArgs(this, path, offsets, domain);
+        }
+
+        /**
+         * Check if the parts of a HTTP request equal this Route, the path
+         * being already matched by the route automaton.
+         *
+         * @param offsets start and end offsets of each path argument in path
+         */
+        RouteArgs matchesRequest(String path, int[] offsets, String accept, String domain, QueryString queryParams) {
+            if (!matchesConditions(accept, domain, queryParams)) {
+                return null;
+            }
+            return new RouteArgs(this, path, offsets, domain);
+        }
+
+        /**
+         * Names of the path arguments, in the order they appear in the path
+         */
+        List<String> pathArgNames() {
+            List<String> names = new ArrayList<String>(args.size());
+            for (Arg arg : args) {
+                if (arg.defaultValue == null) {
+                    names.add(arg.name);
+                }
+            }
+            return names;
+        }
+
+        /**
+         * Check the host, format and querystring params of a request
+         */
+        private boolean matchesConditions(String accept, String domain, QueryString queryParams) {
+            boolean hostMatches = (domain == null);
+            if (domain != null) {
+                Matcher hostMatcher = hostPattern.matcher(domain);
+                hostMatches = hostMatcher.matches();
+            }
+            if (!contains(accept) || !hostMatches) {
+                return false;
+            }
+
+            // Validate querystring params
+            if(queryParams != null && this.qsParams != null && this.qsParams.size() > 0) {
+                for(QueryStringParamInfo requestParamInfo : this.qsParams.values()) {
+                    // only the first param with the required key is checked
+                    int param = queryParams.find(requestParamInfo.getKey());
+                    boolean requiredParamValid;
+                    if(param < 0) {
+                        requiredParamValid = requestParamInfo.isNegatedKey();
+                    } else if(requestParamInfo.isNegatedKey()) {
+                        requiredParamValid = false;
+                    } else if(requestParamInfo.getValue() == null) {
+                        // any value is ok
+                        requiredParamValid = true;
+                    } else {
+                        String value = queryParams.value(param);
+                        if(value == null && requestParamInfo.getValue().equals("") && !requestParamInfo.isNegatedValue()) {
+                            // a NULL value ("key" or "key=") is accepted if the qsParam has a "key=" form
+                            requiredParamValid = true;
+                        } else {
+                            requiredParamValid = requestParamInfo.getValue().equals(value) != requestParamInfo.isNegatedValue();
                         }
                     }
-                    if (hostArg != null && domain != null) {
-                        // Parse the hostname and get only the part we are interested in
-                        String routeValue = hostArg.defaultValue.replaceAll("\\{.*}", "");
-                        domain = domain.replace(routeValue, "");
-                        localArgs.put(hostArg.name, domain);
+
+                    if(!requiredParamValid) {
+                        return false;
                     }
-                    localArgs.putAll(staticArgs);
-                    return localArgs;
                 }
             }
-            return null;
+            return true;
         }
 
         public static class Arg {
@@ -901,7 +1271,7 @@ public class Router {
         }
     }
     
-    private static class QueryStringParamInfo {
+    static class QueryStringParamInfo {
         private String key = "";
         // null => any value is ok
         private String value = null;
@@ -940,6 +1310,9 @@ public class Router {
             this.negatedValue = negatedValue;
         }
 
+        QueryStringParamInfo() {
+        }
+
         public QueryStringParamInfo(String rawParam) {
             
             rawParam = rawParam != null? rawParam.trim() : "";
@@ -0,0 +1,1140 @@
+package org.resthub.web.springmvc.router;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.resthub.web.springmvc.router.Router.ActionDefinition;
+import org.resthub.web.springmvc.router.Router.Route;
+import org.resthub.web.springmvc.router.exceptions.NoHandlerFoundException;
+import org.resthub.web.springmvc.router.exceptions.NoRouteFoundException;
+import org.resthub.web.springmvc.router.exceptions.RouteFileParsingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+
+/**
+ * Routing state of a {@link RouterHandlerMapping}: its route table, loading
+ * timestamp and routing caches.
+ *
+ * <p>Each handler mapping owns its own context, so that several
+ * DispatcherServlets in the same JVM don't overwrite each other's routes; a
+ * context may also be shared by injecting it in several handler mappings.
+ * Contexts loading identical route files share the same compiled route table
+ * in memory.
+ *
+ * <p>The static {@link Router} methods, used by views for reverse routing,
+ * work on the context of the request being handled, or on the context of the
+ * last handler mapping initialized.
+ *
+ * @author Brian Clozel
+ * @see org.resthub.web.springmvc.router.Router
+ */
+public class RouterContext {
+
+    private static final Logger logger = LoggerFactory.getLogger(RouterContext.class);
+
+    /**
+     * Route tables loaded by any context, by fingerprint of their route files
+     */
+    private static final Map<String, WeakReference<RouteTable>> sharedTables = new HashMap<String, WeakReference<RouteTable>>();
+
+    /**
+     * Routes of each route file of the shared tables, for incremental
+     * reloads of the contexts sharing them
+     */
+    private static final Map<RouteTable, Map<String, RouteFileFragment>> sharedFragments = new WeakHashMap<RouteTable, Map<String, RouteFileFragment>>();
+
+    /**
+     * Current route table; never modified once published, only replaced
+     */
+    private volatile RouteTable routeTable = RouteTable.EMPTY;
+
+    private final List<Route> routes = new RouteListView();
+
+    private volatile long lastLoading = -1;
+
+    /**
+     * On-disk cache of parsed route files, null if disabled
+     */
+    private volatile RouteTableCache tableCache;
+
+    private volatile File routeTableCacheDirectory;
+
+    /**
+     * Listeners notified of every routed request, null if none
+     */
+    private volatile RouterListener[] listeners;
+
+    /**
+     * Hit counter reordering routes, null if disabled
+     */
+    private volatile RouteOrderOptimizer orderOptimizer;
+
+    /**
+     * Number of threads parsing route files, 0 for the number of processors
+     */
+    private volatile int parseThreads = 1;
+
+    /**
+     * Parser of the route files, keeping its threads between loads; guarded
+     * by loadLock
+     */
+    private RouteFilesParser parser;
+
+    /**
+     * Routes parsed from each route file at the last load, by prefix and
+     * route file location
+     */
+    private volatile Map<String, RouteFileFragment> fragments = new HashMap<String, RouteFileFragment>();
+
+    /**
+     * Held while loading route files
+     */
+    private final Object loadLock = new Object();
+
+    /**
+     * Routing results by request, null if disabled
+     */
+    private volatile LruCache<RouteCacheKey, RouteCacheEntry> routeCache;
+
+    /**
+     * Requests no route matched, with the route index they were checked
+     * against; null if disabled
+     */
+    private volatile LruCache<RouteCacheKey, RouteIndex> routeMissCache;
+
+    /**
+     * Reverse routing results by action and arguments, null if disabled
+     */
+    private volatile LruCache<ReverseCacheKey, ReverseCacheEntry> reverseCache;
+
+    /**
+     * Parse the routes files and replace the current routes with them.
+     *
+     * @param prefix The prefix that the path of all routes in this route file
+     * start with. This prefix should not end with a '/' character.
+     */
+    public void load(List<Resource> fileResources, String prefix) throws IOException {
+        load(fileResources, prefix, false);
+    }
+
+    /**
+     * Parse the routes files and replace the current routes with them.
+     *
+     * @param prefix The prefix that the path of all routes in this route file
+     * start with. This prefix should not end with a '/' character.
+     * @param validate if true, the current routes are kept unless every line
+     * of the route files is a valid route definition; invalid lines are
+     * otherwise logged and skipped
+     * @throws RouteFileParsingException if validate is true and the route
+     * files hold invalid lines
+     */
+    public void load(List<Resource> fileResources, String prefix, boolean validate) throws IOException {
+        // loads from the route files watcher and from callers are serialized,
+        // so that the last parsed routes are the ones published
+        synchronized (loadLock) {
+            loadLocked(fileResources, prefix, validate);
+        }
+    }
+
+    private void loadLocked(List<Resource> fileResources, String prefix, boolean validate) throws IOException {
+        List<String> paths = new ArrayList<String>(fileResources.size());
+        List<String> contents = new ArrayList<String>(fileResources.size());
+        List<String> hashes = new ArrayList<String>(fileResources.size());
+        for (Resource res : fileResources) {
+            String content = Router.read(res);
+            paths.add(Router.location(res));
+            contents.add(content);
+            hashes.add(hash(content));
+        }
+
+        boolean automatonMatching = routeTable.automatonMatching;
+        String fingerprint = fingerprint(paths, hashes, prefix, automatonMatching);
+        // shared tables may have been loaded without validation
+        RouteTable loadedTable = validate ? null : sharedTable(fingerprint);
+        Map<String, RouteFileFragment> loadedFragments;
+        if (loadedTable == null) {
+            List<String> errors = validate ? new ArrayList<String>() : null;
+            Map<String, RouteFileFragment> previous = fragments;
+            Map<String, RouteFileFragment> parsed = new HashMap<String, RouteFileFragment>();
+            List<Route> loaded = new ArrayList<Route>(500);
+            RouteFileFragment[] reused = new RouteFileFragment[paths.size()];
+            List<Integer> changed = new ArrayList<Integer>();
+            for (int i = 0; i < paths.size(); i++) {
+                RouteFileFragment fragment = previous.get(prefix + "\n" + paths.get(i));
+                if (fragment == null || hashes.get(i) == null || !hashes.get(i).equals(fragment.hash)
+                        || (validate && !fragment.validated)) {
+                    changed.add(i);
+                } else {
+                    reused[i] = fragment;
+                }
+            }
+            List<List<Route>> cached = null;
+            if (!changed.isEmpty() && !validate && fingerprint != null && tableCache != null) {
+                cached = tableCache.read(fingerprint, paths, hashes);
+            }
+            int reparsed = 0;
+            if (cached != null) {
+                for (int i : changed) {
+                    reused[i] = new RouteFileFragment(hashes.get(i), cached.get(i), false);
+                }
+            } else if (!changed.isEmpty()) {
+                List<String> changedPaths = new ArrayList<String>(changed.size());
+                List<String> changedContents = new ArrayList<String>(changed.size());
+                for (int i : changed) {
+                    changedPaths.add(paths.get(i));
+                    changedContents.add(contents.get(i));
+                }
+                List<List<Route>> routesByFile = parser().parse(changedContents, changedPaths, prefix, errors);
+                for (int j = 0; j < changed.size(); j++) {
+                    int i = changed.get(j);
+                    reused[i] = new RouteFileFragment(hashes.get(i), routesByFile.get(j), validate);
+                }
+                reparsed = changed.size();
+            }
+            for (int i = 0; i < paths.size(); i++) {
+                parsed.put(prefix + "\n" + paths.get(i), reused[i]);
+                loaded.addAll(reused[i].routes);
+            }
+            if (errors != null && !errors.isEmpty()) {
+                throw new RouteFileParsingException("Invalid route files, keeping the current routes: " + errors);
+            }
+            loadedFragments = parsed;
+            if (reparsed > 0 && fingerprint != null && tableCache != null) {
+                List<List<Route>> routesByFile = new ArrayList<List<Route>>(paths.size());
+                for (RouteFileFragment fragment : reused) {
+                    routesByFile.add(fragment.routes);
+                }
+                tableCache.write(fingerprint, paths, hashes, routesByFile);
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Parsed " + reparsed + " of " + paths.size() + " route files");
+            }
+            // build the new table aside; requests keep using the current one
+            loadedTable = new RouteTable(loaded, automatonMatching);
+            loadedTable.index();
+            loadedTable.reverseIndex();
+            loadedTable = shareTable(fingerprint, loadedTable, parsed);
+        } else {
+            loadedFragments = sharedFragments(loadedTable);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Sharing the route table already loaded from " + paths);
+            }
+        }
+        synchronized (this) {
+            publish(loadedTable);
+            fragments = loadedFragments;
+        }
+        lastLoading = System.currentTimeMillis();
+        Router.loaded(this);
+    }
+
+    /**
+     * Load the routes files again if one of them changed since they were last
+     * loaded.
+     */
+    public void detectChanges(List<Resource> fileResources, String prefix) throws IOException {
+
+        boolean hasChanged = false;
+
+        for (Resource res : fileResources) {
+            if (res.lastModified() > lastLoading) {
+                hasChanged = true;
+                break;
+            }
+        }
+
+        if (hasChanged) {
+            load(fileResources, prefix);
+        }
+    }
+
+    /**
+     * Keep the parsed routes in the given directory, so that route files
+     * unchanged since a previous run are loaded without being parsed again.
+     * The cache is disabled if directory is null (default).
+     */
+    public void setRouteTableCacheDirectory(File directory) {
+        tableCache = directory == null ? null : new RouteTableCache(directory);
+        routeTableCacheDirectory = directory;
+    }
+
+    public File getRouteTableCacheDirectory() {
+        return routeTableCacheDirectory;
+    }
+
+    /**
+     * Parse route files with up to <code>threads</code> threads; 0 uses as
+     * many threads as processors, 1 parses route files on the loading thread
+     * (default). Route priorities don't depend on this setting.
+     */
+    public void setParseThreads(int threads) {
+        parseThreads = threads;
+    }
+
+    /**
+     * Get the route files parser for the current number of threads. Called
+     * with loadLock held.
+     */
+    private RouteFilesParser parser() {
+        RouteFilesParser current = parser;
+        int threads = parseThreads > 0 ? parseThreads : Runtime.getRuntime().availableProcessors();
+        if (current == null || current.getThreads() != threads) {
+            if (current != null) {
+                current.shutdown();
+            }
+            current = new RouteFilesParser(threads);
+            parser = current;
+        }
+        return current;
+    }
+
+    public int getParseThreads() {
+        return parseThreads;
+    }
+
+    /**
+     * Notify the given listener of every request routed by
+     * {@link #findRoute(HTTPRequestAdapter)}, with the routing time and the
+     * number of routes evaluated.
+     */
+    public synchronized void addListener(RouterListener listener) {
+        RouterListener[] current = listeners;
+        int size = current == null ? 0 : current.length;
+        RouterListener[] updated = new RouterListener[size + 1];
+        if (current != null) {
+            System.arraycopy(current, 0, updated, 0, size);
+        }
+        updated[size] = listener;
+        listeners = updated;
+    }
+
+    public synchronized void removeListener(RouterListener listener) {
+        RouterListener[] current = listeners;
+        if (current == null) {
+            return;
+        }
+        List<RouterListener> remaining = new ArrayList<RouterListener>(Arrays.asList(current));
+        remaining.remove(listener);
+        listeners = remaining.isEmpty() ? null : remaining.toArray(new RouterListener[remaining.size()]);
+    }
+
+    /**
+     * Count the requests matched by each route, so that
+     * {@link #optimizeRouteOrder()} can evaluate the most matched routes
+     * first (disabled by default).
+     *
+     * @param profileFile file keeping the hit counts across restarts, loaded
+     * if it exists; may be null
+     */
+    public synchronized void enableRouteOrderOptimization(File profileFile) {
+        RouteOrderOptimizer previous = orderOptimizer;
+        orderOptimizer = new RouteOrderOptimizer(profileFile);
+        if (previous != null) {
+            previous.stop();
+        }
+    }
+
+    /**
+     * Stop counting route hits, saving them to the profile file if any, and
+     * evaluate routes in priority order again.
+     */
+    public void disableRouteOrderOptimization() {
+        RouteOrderOptimizer optimizer = orderOptimizer;
+        if (optimizer != null) {
+            orderOptimizer = null;
+            optimizer.stop();
+            synchronized (this) {
+                publish(routeTable.withRoutes(routeTable.routes));
+            }
+        }
+    }
+
+    /**
+     * Evaluate the most matched routes first, as long as the routes they pass
+     * can't match the same requests, so that every request is routed as
+     * before. The route list keeps its order. No-op unless route order
+     * optimization is enabled.
+     *
+     * @see #enableRouteOrderOptimization(File)
+     */
+    public void optimizeRouteOrder() {
+        RouteOrderOptimizer optimizer = orderOptimizer;
+        if (optimizer == null) {
+            return;
+        }
+        RouteTable table = routeTable;
+        List<Route> order = optimizer.order(table.routes);
+        if (order.equals(table.matchOrder)) {
+            return;
+        }
+        // build the dispatch tables aside, then publish unless routes changed meanwhile
+        RouteTable reordered = table.withMatchOrder(order);
+        reordered.index();
+        synchronized (this) {
+            if (routeTable == table) {
+                publish(reordered);
+            }
+        }
+    }
+
+    /**
+     * Periodically reorder routes in a daemon thread, until route order
+     * optimization is disabled.
+     *
+     * @param interval delay between two reorderings, in milliseconds
+     */
+    void scheduleRouteOrderOptimization(long interval) {
+        RouteOrderOptimizer optimizer = orderOptimizer;
+        if (optimizer != null) {
+            optimizer.start(this, interval);
+        }
+    }
+
+    /**
+     * Timestamp the routes files were last loaded at, -1 if never loaded.
+     */
+    public long getLastLoading() {
+        return lastLoading;
+    }
+
+    /**
+     * Get a live view of the current route list. Each change copies the
+     * route list and publishes a new route table, so adding n routes one by
+     * one costs O(n^2): prefer {@link #setRoutes(List)}, <code>addAll</code>
+     * or {@link #load(List, String)} to change many routes at once.
+     */
+    public List<Route> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * Replace all routes at once, publishing a single route table. Its
+     * dispatch tables are built on the next lookup.
+     */
+    public void setRoutes(List<Route> routes) {
+        synchronized (this) {
+            publish(routeTable.withRoutes(routes));
+        }
+    }
+
+    /**
+     * Choose the path matching engine: a combined automaton built over all
+     * route paths, or path tries checked with each route regex (default).
+     */
+    public void setAutomatonMatching(boolean automatonMatching) {
+        synchronized (this) {
+            publish(routeTable.withAutomatonMatching(automatonMatching));
+        }
+    }
+
+    public boolean isAutomatonMatching() {
+        return routeTable.automatonMatching;
+    }
+
+    /**
+     * Cache the routing results of up to <code>size</code> distinct requests
+     * (method, path, host and format); results depending on the query string
+     * are never cached. The cache is disabled if size is 0 (default).
+     */
+    public void setRouteCacheSize(int size) {
+        routeCache = size > 0 ? new LruCache<RouteCacheKey, RouteCacheEntry>(size) : null;
+    }
+
+    public int getRouteCacheSize() {
+        LruCache<RouteCacheKey, RouteCacheEntry> cache = routeCache;
+        return cache == null ? 0 : cache.getMaxSize();
+    }
+
+    /**
+     * Get the routing results cache, to read its statistics.
+     *
+     * @return the cache, or null if disabled
+     */
+    public LruCache<?, ?> getRouteCache() {
+        return routeCache;
+    }
+
+    /**
+     * Remember up to <code>size</code> distinct requests (method, path, host
+     * and format) that didn't match any route, so that they are rejected by a
+     * single lookup. Misses that may depend on the query string are never
+     * cached. The cache is disabled if size is 0 (default).
+     */
+    public void setRouteMissCacheSize(int size) {
+        routeMissCache = size > 0 ? new LruCache<RouteCacheKey, RouteIndex>(size) : null;
+    }
+
+    public int getRouteMissCacheSize() {
+        LruCache<RouteCacheKey, RouteIndex> cache = routeMissCache;
+        return cache == null ? 0 : cache.getMaxSize();
+    }
+
+    /**
+     * Get the unmatched requests cache, to read its statistics.
+     *
+     * @return the cache, or null if disabled
+     */
+    public LruCache<?, ?> getRouteMissCache() {
+        return routeMissCache;
+    }
+
+    /**
+     * Cache the reverse routing results of up to <code>size</code> distinct
+     * actions and arguments (and the current request format, for routes with
+     * a <code>format</code> static arg). Only arguments with immutable values
+     * (strings, numbers, booleans, chars, enums or lists of them) are cached.
+     * The cache is disabled if size is 0 (default).
+     */
+    public void setReverseCacheSize(int size) {
+        reverseCache = size > 0 ? new LruCache<ReverseCacheKey, ReverseCacheEntry>(size) : null;
+    }
+
+    public int getReverseCacheSize() {
+        LruCache<ReverseCacheKey, ReverseCacheEntry> cache = reverseCache;
+        return cache == null ? 0 : cache.getMaxSize();
+    }
+
+    /**
+     * Get the reverse routing results cache, to read its statistics.
+     *
+     * @return the cache, or null if disabled
+     */
+    public LruCache<?, ?> getReverseCache() {
+        return reverseCache;
+    }
+
+    /**
+     * Get the current route table snapshot.
+     */
+    RouteTable routeTable() {
+        return routeTable;
+    }
+
+    /**
+     * Get the dispatch tables of the current route table.
+     */
+    RouteIndex routeIndex() {
+        return routeTable.index();
+    }
+
+    /**
+     * Replace the current route table.
+     */
+    private void publish(RouteTable table) {
+        routeTable = table;
+        routesChanged();
+    }
+
+    /**
+     * Drop the cached routing results computed against older route tables.
+     */
+    private void routesChanged() {
+        LruCache<RouteCacheKey, RouteCacheEntry> cache = routeCache;
+        if (cache != null) {
+            cache.clear();
+        }
+        LruCache<RouteCacheKey, RouteIndex> missCache = routeMissCache;
+        if (missCache != null) {
+            missCache.clear();
+        }
+        LruCache<ReverseCacheKey, ReverseCacheEntry> cachedReverse = reverseCache;
+        if (cachedReverse != null) {
+            cachedReverse.clear();
+        }
+    }
+
+    /**
+     * Find the route matching the given request, and update the request with
+     * its action and arguments.
+     *
+     * @throws NoRouteFoundException if no route matches the request
+     * @see #findRoute(HTTPRequestAdapter)
+     */
+    public Route route(HTTPRequestAdapter request) {
+        Route route = findRoute(request);
+        if (route == Router.NO_ROUTE) {
+            throw new NoRouteFoundException(request.method, request.path);
+        }
+        return route;
+    }
+
+    /**
+     * Find the route matching the given request, and update the request with
+     * its action and arguments. Unlike {@link #route(HTTPRequestAdapter)}, no
+     * exception is thrown for unmatched requests.
+     *
+     * @return the matching route, or {@link Router#NO_ROUTE} if no route
+     * matches
+     */
+    public Route findRoute(HTTPRequestAdapter request) {
+        RouterListener[] observers = listeners;
+        if (observers == null) {
+            return findRoute(request, null);
+        }
+        long start = System.nanoTime();
+        int[] evaluated = new int[1];
+        Route route = findRoute(request, evaluated);
+        long nanos = System.nanoTime() - start;
+        for (RouterListener listener : observers) {
+            try {
+                listener.requestRouted(request, route, evaluated[0], nanos);
+            } catch (RuntimeException ex) {
+                logger.warn("Router listener " + listener + " failed", ex);
+            }
+        }
+        return route;
+    }
+
+    /**
+     * @param evaluated if not null, receives the number of routes evaluated
+     */
+    private Route findRoute(HTTPRequestAdapter request, int[] evaluated) {
+        if (logger.isTraceEnabled()) {
+            logger.trace("Route: " + request.path + " - " + request.querystring);
+        }
+        // request method may be overriden if a x-http-method-override parameter is given
+        String overridingMethod = QueryString.methodOverride(request.querystring);
+        if (overridingMethod != null) {
+            if (logger.isTraceEnabled()) {
+                logger.trace("request method %s overriden to %s ", request.method, overridingMethod);
+            }
+            request.method = overridingMethod;
+        }
+
+        // HEAD requests are served by a merged HEAD/GET table, then routes
+        // are partitioned by host
+        RouteIndex index = routeIndex();
+        RouteIndex.MethodTable table = index.table(request.method, request.host);
+
+        // routes without arguments nor conditions are answered by an exact match
+        Route staticRoute = table.staticRoute(request.host, request.path);
+        if (staticRoute != null) {
+            // not counted for route ordering, their position doesn't matter
+            return routeFound(request, staticRoute, new RouteArgs(staticRoute));
+        }
+
+        LruCache<RouteCacheKey, RouteCacheEntry> cache = routeCache;
+        RouteCacheKey cacheKey = null;
+        if (cache != null) {
+            cacheKey = new RouteCacheKey(request.method, request.path, request.host, request.format);
+            RouteCacheEntry cached = cache.get(cacheKey);
+            // entries computed against older routes may remain after a reload
+            if (cached != null && cached.index == index) {
+                hit(cached.route);
+                return routeFound(request, cached.route, cached.args.copy());
+            }
+        }
+        LruCache<RouteCacheKey, RouteIndex> missCache = routeMissCache;
+        if (missCache != null) {
+            if (cacheKey == null) {
+                cacheKey = new RouteCacheKey(request.method, request.path, request.host, request.format);
+            }
+            if (missCache.get(cacheKey) == index) {
+                return Router.NO_ROUTE;
+            }
+        }
+
+        // query params are only read by routes with querystring conditions
+        QueryString queryParams = new QueryString(request.querystring);
+
+        RouteIndex.RouteMatch match = table.match(request.path, request.format, request.host, queryParams, evaluated);
+        if (match != null) {
+            hit(match.route);
+            if (cache != null && !match.queryDependent) {
+                // the request may change its arguments, not the cached ones
+                cache.put(cacheKey, new RouteCacheEntry(index, match.route, match.args.copy()));
+            }
+            return routeFound(request, match.route, match.args);
+        }
+        if (missCache != null && !table.mayDependOnQuery(request.path)) {
+            missCache.put(cacheKey, index);
+        }
+        return Router.NO_ROUTE;
+    }
+
+    /**
+     * Count a route hit for route order optimization, whether the route was
+     * evaluated or found in the routing cache.
+     */
+    private void hit(Route route) {
+        RouteOrderOptimizer optimizer = orderOptimizer;
+        if (optimizer != null) {
+            optimizer.hit(route);
+        }
+    }
+
+    /**
+     * Update the request with the route that matched it.
+     *
+     * @param args arguments of this request only, copied on the first change
+     */
+    private static Route routeFound(HTTPRequestAdapter request, Route route, RouteArgs args) {
+        request.routeArgs = args;
+        request.action = route.action;
+        if (args.containsKey("format")) {
+            request.setFormat(args.get("format"));
+        }
+        if (request.action.indexOf("{") > -1) { // more optimization ?
+            for (String arg : request.routeArgs.keySet()) {
+                request.action = request.action.replace("{" + arg + "}", request.routeArgs.get(arg));
+            }
+        }
+        return route;
+    }
+
+    public Map<String, String> route(String method, String path, String headers, String host) {
+        RouteIndex.RouteMatch match = routeIndex().table(method, host).match(path, headers, host, null);
+        if (match != null) {
+            hit(match.route);
+            Map<String, String> args = new HashMap<String, String>(match.args);
+            args.put("action", match.route.action);
+            return args;
+        }
+        return new HashMap<String, String>(16);
+    }
+
+    /**
+     * Resolve an action once, to generate its URLs without reverse routing
+     * each time.
+     *
+     * @throws NoHandlerFoundException if no route reverses the action
+     * @see ReverseHandle
+     */
+    public ReverseHandle handle(String action) {
+        return new ReverseHandle(this, action);
+    }
+
+    /**
+     * @throws NoHandlerFoundException if no route reverses the action
+     */
+    public ActionDefinition reverse(String action, Map<String, Object> args) {
+        ActionDefinition definition = tryReverse(action, args);
+        if (definition == null) {
+            throw new NoHandlerFoundException(action, args);
+        }
+        return definition;
+    }
+
+    /**
+     * Reverse route the given action, without throwing an exception if no
+     * route reverses it.
+     *
+     * @return the action definition, or null if no route reverses the action
+     */
+    public ActionDefinition tryReverse(String action, Map<String, Object> args) {
+        RouteTable table = routeTable;
+        ReverseIndex index = table.reverseIndex();
+        LruCache<ReverseCacheKey, ReverseCacheEntry> cache = reverseCache;
+        ReverseCacheKey cacheKey = null;
+        if (cache != null) {
+            cacheKey = ReverseCacheKey.of(action, args, index.dependsOnFormat(action));
+            if (cacheKey != null) {
+                ReverseCacheEntry cached = cache.get(cacheKey);
+                // entries computed against older routes may remain after a reload
+                if (cached != null && cached.table == table) {
+                    return cached.copy(action, args);
+                }
+            }
+        }
+        ActionDefinition definition = Router.tryReverse(index.candidates(action), action, args);
+        // routes may add action and host arguments to the given ones: results
+        // changing the arguments aren't cached, as a cache hit wouldn't
+        if (definition != null && cacheKey != null && cacheKey.sameArgs(args)) {
+            cache.put(cacheKey, new ReverseCacheEntry(table, definition));
+        }
+        return definition;
+    }
+
+    /**
+     * Get a table already loaded from the same route files, if still in use.
+     */
+    private static RouteTable sharedTable(String fingerprint) {
+        if (fingerprint == null) {
+            return null;
+        }
+        synchronized (sharedTables) {
+            WeakReference<RouteTable> shared = sharedTables.get(fingerprint);
+            return shared == null ? null : shared.get();
+        }
+    }
+
+    /**
+     * Register a loaded table, unless an identical one was registered in the
+     * meantime.
+     *
+     * @return the table to use
+     */
+    private static RouteTable shareTable(String fingerprint, RouteTable table, Map<String, RouteFileFragment> fragments) {
+        if (fingerprint == null) {
+            return table;
+        }
+        synchronized (sharedTables) {
+            Iterator<WeakReference<RouteTable>> references = sharedTables.values().iterator();
+            while (references.hasNext()) {
+                if (references.next().get() == null) {
+                    references.remove();
+                }
+            }
+            WeakReference<RouteTable> shared = sharedTables.get(fingerprint);
+            if (shared != null && shared.get() != null) {
+                return shared.get();
+            }
+            sharedTables.put(fingerprint, new WeakReference<RouteTable>(table));
+            sharedFragments.put(table, fragments);
+            return table;
+        }
+    }
+
+    /**
+     * Get the routes of each route file of a shared table.
+     *
+     * @return the fragments, or an empty map if unknown
+     */
+    private static Map<String, RouteFileFragment> sharedFragments(RouteTable table) {
+        synchronized (sharedTables) {
+            Map<String, RouteFileFragment> shared = sharedFragments.get(table);
+            return shared != null ? shared : new HashMap<String, RouteFileFragment>();
+        }
+    }
+
+    /**
+     * Hash everything a loaded route table depends on.
+     *
+     * @return the fingerprint, or null if it can't be computed
+     */
+    private static String fingerprint(List<String> paths, List<String> hashes, String prefix, boolean automatonMatching) {
+        if (hashes.contains(null)) {
+            return null;
+        }
+        StringBuilder files = new StringBuilder();
+        files.append(prefix).append('\n').append(automatonMatching).append('\n');
+        for (int i = 0; i < paths.size(); i++) {
+            files.append(paths.get(i)).append('\n').append(hashes.get(i)).append('\n');
+        }
+        return hash(files.toString());
+    }
+
+    /**
+     * Compute the SHA-1 hash of a route file content.
+     *
+     * @return the hash, or null if it can't be computed
+     */
+    private static String hash(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest(content.getBytes("UTF-8"))) {
+                hex.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            return null;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Read-only view of the current route table; changes are applied to a
+     * copy of the table, which is then published.
+     */
+    private class RouteListView extends AbstractList<Route> {
+
+        @Override
+        public Route get(int index) {
+            return routeTable.routes.get(index);
+        }
+
+        @Override
+        public int size() {
+            return routeTable.routes.size();
+        }
+
+        @Override
+        public Iterator<Route> iterator() {
+            // iterate over a single snapshot
+            return routeTable.routes.iterator();
+        }
+
+        @Override
+        public void add(int index, Route route) {
+            synchronized (RouterContext.this) {
+                List<Route> copy = new ArrayList<Route>(routeTable.routes);
+                copy.add(index, route);
+                publish(routeTable.withRoutes(copy));
+            }
+        }
+
+        @Override
+        public boolean addAll(int index, Collection<? extends Route> added) {
+            // a single copy, unlike AbstractList adding routes one by one
+            synchronized (RouterContext.this) {
+                List<Route> copy = new ArrayList<Route>(routeTable.routes);
+                copy.addAll(index, added);
+                publish(routeTable.withRoutes(copy));
+            }
+            return !added.isEmpty();
+        }
+
+        @Override
+        public Route set(int index, Route route) {
+            synchronized (RouterContext.this) {
+                List<Route> copy = new ArrayList<Route>(routeTable.routes);
+                Route previous = copy.set(index, route);
+                publish(routeTable.withRoutes(copy));
+                return previous;
+            }
+        }
+
+        @Override
+        public Route remove(int index) {
+            synchronized (RouterContext.this) {
+                List<Route> copy = new ArrayList<Route>(routeTable.routes);
+                Route previous = copy.remove(index);
+                publish(routeTable.withRoutes(copy));
+                return previous;
+            }
+        }
+
+        @Override
+        public void clear() {
+            synchronized (RouterContext.this) {
+                publish(routeTable.withRoutes(new ArrayList<Route>()));
+            }
+        }
+    }
+
+    /**
+     * Request attributes a cached routing result depends on
+     */
+    private static class RouteCacheKey {
+
+        private final String method;
+        private final String path;
+        private final String host;
+        private final String format;
+        private final int hash;
+
+        RouteCacheKey(String method, String path, String host, String format) {
+            this.method = method;
+            this.path = path;
+            this.host = host;
+            this.format = format;
+            int h = method == null ? 0 : method.hashCode();
+            h = 31 * h + (path == null ? 0 : path.hashCode());
+            h = 31 * h + (host == null ? 0 : host.hashCode());
+            this.hash = 31 * h + (format == null ? 0 : format.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RouteCacheKey)) {
+                return false;
+            }
+            RouteCacheKey other = (RouteCacheKey) o;
+            return hash == other.hash && eq(path, other.path) && eq(method, other.method)
+                    && eq(host, other.host) && eq(format, other.format);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        private static boolean eq(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    /**
+     * Cached routing result, valid for the routes it was computed against
+     */
+    private static class RouteCacheEntry {
+
+        final RouteIndex index;
+        final Route route;
+        final RouteArgs args;
+
+        RouteCacheEntry(RouteIndex index, Route route, RouteArgs args) {
+            this.index = index;
+            this.route = route;
+            this.args = args;
+        }
+    }
+
+    /**
+     * Action and arguments a cached reverse routing result depends on
+     */
+    private static class ReverseCacheKey {
+
+        private final String action;
+        /**
+         * Names and values of the arguments, in iteration order since it sets
+         * the query string order
+         */
+        private final Object[] args;
+        private final String format;
+        private final int hash;
+
+        private ReverseCacheKey(String action, Object[] args, String format) {
+            this.action = action;
+            this.args = args;
+            this.format = format;
+            int h = action.hashCode();
+            h = 31 * h + Arrays.hashCode(args);
+            this.hash = 31 * h + (format == null ? 0 : format.hashCode());
+        }
+
+        /**
+         * @param withFormat whether the result depends on the current
+         * request format
+         * @return the key, or null if the result can't be cached
+         */
+        static ReverseCacheKey of(String action, Map<String, Object> args, boolean withFormat) {
+            String format = null;
+            if (withFormat) {
+                HTTPRequestAdapter request = HTTPRequestAdapter.current.get();
+                if (request == null) {
+                    return null;
+                }
+                format = request.format;
+            }
+            Object[] values = new Object[args.size() * 2];
+            int i = 0;
+            for (Map.Entry<String, Object> arg : args.entrySet()) {
+                Object value = arg.getValue();
+                if (value instanceof List<?>) {
+                    List<?> list = (List<?>) value;
+                    for (Object element : list) {
+                        if (!isImmutable(element)) {
+                            return null;
+                        }
+                    }
+                    value = new ArrayList<Object>(list);
+                } else if (!isImmutable(value)) {
+                    return null;
+                }
+                values[i++] = arg.getKey();
+                values[i++] = value;
+            }
+            return new ReverseCacheKey(action, values, format);
+        }
+
+        /**
+         * Check whether the given arguments are the ones of this key.
+         */
+        boolean sameArgs(Map<String, Object> args) {
+            if (args.size() * 2 != this.args.length) {
+                return false;
+            }
+            int i = 0;
+            for (Map.Entry<String, Object> arg : args.entrySet()) {
+                if (!eq(this.args[i++], arg.getKey()) || !eq(this.args[i++], arg.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isImmutable(Object value) {
+            return value == null || value instanceof String || value instanceof Integer || value instanceof Long
+                    || value instanceof Short || value instanceof Byte || value instanceof Double
+                    || value instanceof Float || value instanceof Boolean || value instanceof Character
+                    || value instanceof Enum<?>;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ReverseCacheKey)) {
+                return false;
+            }
+            ReverseCacheKey other = (ReverseCacheKey) o;
+            return hash == other.hash && action.equals(other.action) && Arrays.equals(args, other.args)
+                    && eq(format, other.format);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        private static boolean eq(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    /**
+     * Cached reverse routing result, valid for the routes it was computed
+     * against
+     */
+    private static class ReverseCacheEntry {
+
+        final RouteTable table;
+        final String url;
+        final String method;
+        final boolean star;
+        final String host;
+
+        ReverseCacheEntry(RouteTable table, ActionDefinition definition) {
+            this.table = table;
+            this.url = definition.url;
+            this.method = definition.method;
+            this.star = definition.star;
+            this.host = definition.host;
+        }
+
+        /**
+         * Get a new definition, since callers may change it.
+         */
+        ActionDefinition copy(String action, Map<String, Object> args) {
+            ActionDefinition definition = new ActionDefinition();
+            definition.url = url;
+            definition.method = method;
+            definition.star = star;
+            definition.action = action;
+            definition.args = new HashMap<String, Object>(args);
+            definition.host = host;
+            return definition;
+        }
+    }
+
+    /**
+     * Routes parsed from a route file content
+     */
+    private static class RouteFileFragment {
+
+        final String hash;
+
+        final List<Route> routes;
+
+        /**
+         * Whether every line of the route file is a valid route definition
+         */
+        final boolean validated;
+
+        RouteFileFragment(String hash, List<Route> routes, boolean validated) {
+            this.hash = hash;
+            this.routes = routes;
+            this.validated = validated;
+        }
+    }
+}
@@ -1,22 +1,29 @@
 package org.resthub.web.springmvc.router;
 
+import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import javax.management.JMException;
+import javax.management.ObjectName;
 import javax.servlet.http.HttpServletRequest;
-import org.resthub.web.springmvc.router.exceptions.NoRouteFoundException;
+import javax.servlet.http.HttpServletResponse;
 import org.resthub.web.springmvc.router.exceptions.RouteFileParsingException;
+import org.resthub.web.springmvc.router.exceptions.StacklessExceptions;
 import org.resthub.web.springmvc.router.support.RouterHandlerResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.HandlerMapping;
 import org.springframework.web.servlet.handler.AbstractHandlerMapping;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
 
 /**
  * Implementation of the {@link org.springframework.web.servlet.HandlerMapping}
@@ -64,11 +71,30 @@ import org.springframework.web.servlet.handler.AbstractHandlerMapping;
  * @author Brian Clozel
  * @see org.springframework.web.servlet.handler.AbstractHandlerMapping
  */
-public class RouterHandlerMapping extends AbstractHandlerMapping {
+public class RouterHandlerMapping extends AbstractHandlerMapping implements DisposableBean {
 
     private static final Logger logger = LoggerFactory.getLogger(RouterHandlerMapping.class);
     private List<String> routeFiles;
     private String servletPrefix;
+    private boolean automatonMatching = false;
+    private int routeCacheSize = 0;
+    private int routeMissCacheSize = 0;
+    private int reverseCacheSize = 0;
+    private boolean stacklessExceptions = false;
+    private Boolean previousStacklessExceptions;
+    private boolean watchRouteFiles = false;
+    private long watchInterval = 1000;
+    private File routeTableCacheDirectory;
+    private int parseThreads = 1;
+    private long routeOrderInterval = 0;
+    private File routeProfileFile;
+    private List<RouterListener> listeners;
+    private boolean metrics = false;
+    private String metricsObjectName;
+    private RouterMetrics routerMetrics;
+    private ObjectName registeredMetricsName;
+    private RouterContext router;
+    private RouteFilesWatcher watcher;
     private RouterHandlerResolver methodResolver;
 
     public RouterHandlerMapping() {
@@ -99,6 +125,214 @@ public class RouterHandlerMapping extends AbstractHandlerMapping {
         this.routeFiles = routeFiles;
     }
 
+    /**
+     * Routing context holding the routes of this HandlerMapping; a new
+     * context is created if none is injected. Inject the same context in
+     * several HandlerMappings to share their routes.
+     */
+    public RouterContext getRouter() {
+        return router;
+    }
+
+    public void setRouter(RouterContext router) {
+        this.router = router;
+    }
+
+    /**
+     * Match route paths with a single automaton built over all routes,
+     * instead of checking each candidate route regex (default: false).
+     * Injected by bean configuration (in servlet.xml)
+     */
+    public boolean isAutomatonMatching() {
+        return automatonMatching;
+    }
+
+    public void setAutomatonMatching(boolean automatonMatching) {
+        this.automatonMatching = automatonMatching;
+    }
+
+    /**
+     * Maximum number of routing results kept in cache, 0 to disable the
+     * cache (default: 0).
+     * Injected by bean configuration (in servlet.xml)
+     */
+    public int getRouteCacheSize() {
+        return routeCacheSize;
+    }
+
+    public void setRouteCacheSize(int routeCacheSize) {
+        this.routeCacheSize = routeCacheSize;
+    }
+
+    /**
+     * Maximum number of unmatched requests kept in cache, 0 to disable the
+     * cache (default: 0).
+     * Injected by bean configuration (in servlet.xml)
+     */
+    public int getRouteMissCacheSize() {
+        return routeMissCacheSize;
+    }
+
+    public void setRouteMissCacheSize(int routeMissCacheSize) {
+        this.routeMissCacheSize = routeMissCacheSize;
+    }
+
+    /**
+     * Maximum number of reverse routing results kept in cache, 0 to disable
+     * the cache (default: 0).
+     * Injected by bean configuration (in servlet.xml)
+     */
+    public int getReverseCacheSize() {
+        return reverseCacheSize;
+    }
+
+    public void setReverseCacheSize(int reverseCacheSize) {
+        this.reverseCacheSize = reverseCacheSize;
+    }
+
+    /**
+     * Don't capture the stack trace of routing exceptions, for applications
+     * handling routing misses as a normal case (default: false). This
+     * applies to all routers of the class loader, until this handler
+     * mapping is destroyed.
+     * Injected by bean configuration (in servlet.xml)
+     *
+     * @see StacklessExceptions
+     */
+    public boolean isStacklessExceptions() {
+        return stacklessExceptions;
+    }
+
+    public void setStacklessExceptions(boolean stacklessExceptions) {
+        this.stacklessExceptions = stacklessExceptions;
+    }
+
+    /**
+     * Reload the route files in a background thread when they change
+     * (default: false). Invalid route files are rejected, the current routes
+     * being kept.
+     * Injected by bean configuration (in servlet.xml)
+     */
+    public boolean isWatchRouteFiles() {
+        return watchRouteFiles;
+    }
+
+    public void setWatchRouteFiles(boolean watchRouteFiles) {
+        this.watchRouteFiles = watchRouteFiles;
+    }
+
+    /**
+     * Delay between two checks of the route files, in milliseconds; route
+     * files are reloaded once unchanged for this delay (default: 1000).
+     * Injected by bean configuration (in servlet.xml)
+     */
+    public long getWatchInterval() {
+        return watchInterval;
+    }
+
+    public void setWatchInterval(long watchInterval) {
+        this.watchInterval = watchInterval;
+    }
+
+    /**
+     * Directory keeping the parsed route files between application restarts,
+     * null to disable this cache (default: null).
+     * Injected by bean configuration (in servlet.xml)
+     */
+    public File getRouteTableCacheDirectory() {
+        return routeTableCacheDirectory;
+    }
+
+    public void setRouteTableCacheDirectory(File routeTableCacheDirectory) {
+        this.routeTableCacheDirectory = routeTableCacheDirectory;
+    }
+
+    /**
+     * Number of threads parsing route files, 0 for as many threads as
+     * processors (default: 1, on the loading thread).
+     * Injected by bean configuration (in servlet.xml)
+     */
+    public int getParseThreads() {
+        return parseThreads;
+    }
+
+    public void setParseThreads(int parseThreads) {
+        this.parseThreads = parseThreads;
+    }
+
+    /**
+     * Delay between two reorderings of the routes by hit count, in
+     * milliseconds; 0 to keep the declared order (default: 0).
+     * Injected by bean configuration (in servlet.xml)
+     */
+    public long getRouteOrderInterval() {
+        return routeOrderInterval;
+    }
+
+    public void setRouteOrderInterval(long routeOrderInterval) {
+        this.routeOrderInterval = routeOrderInterval;
+    }
+
+    /**
+     * File keeping the route hit counts across restarts, if routes are
+     * reordered (default: null).
+     * Injected by bean configuration (in servlet.xml)
+     */
+    public File getRouteProfileFile() {
+        return routeProfileFile;
+    }
+
+    public void setRouteProfileFile(File routeProfileFile) {
+        this.routeProfileFile = routeProfileFile;
+    }
+
+    /**
+     * Listeners notified of every request routed by this HandlerMapping.
+     * Injected by bean configuration (in servlet.xml)
+     */
+    public List<RouterListener> getListeners() {
+        return listeners;
+    }
+
+    public void setListeners(List<RouterListener> listeners) {
+        this.listeners = listeners;
+    }
+
+    /**
+     * Collect routing metrics and register them as a JMX MBean in the
+     * platform MBean server (default: false).
+     * Injected by bean configuration (in servlet.xml)
+     */
+    public boolean isMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(boolean metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * JMX name of the routing metrics MBean (default:
+     * org.resthub.web.springmvc.router:type=RouterMetrics,name=router-[id]).
+     * Injected by bean configuration (in servlet.xml)
+     */
+    public String getMetricsObjectName() {
+        return metricsObjectName;
+    }
+
+    public void setMetricsObjectName(String metricsObjectName) {
+        this.metricsObjectName = metricsObjectName;
+    }
+
+    /**
+     * Get the routing metrics of this HandlerMapping.
+     *
+     * @return the metrics, or null if disabled
+     */
+    public RouterMetrics getRouterMetrics() {
+        return routerMetrics;
+    }
+
     /**
      * Reload routes configuration at runtime. No-op if configuration files
      * didn't change since last reload.
@@ -111,7 +345,7 @@ public class RouterHandlerMapping extends AbstractHandlerMapping {
         }
         
         try {
-            Router.detectChanges(fileResources, servletPrefix);
+            this.router.detectChanges(fileResources, servletPrefix);
         } catch (IOException ex) {
             throw new RouteFileParsingException(
                     "Could not read route configuration files", ex);
@@ -134,7 +368,45 @@ public class RouterHandlerMapping extends AbstractHandlerMapping {
             for(String fileName : this.routeFiles) {
                 fileResources.addAll(Arrays.asList(getApplicationContext().getResources(fileName)));
             }
-            Router.load(fileResources, this.servletPrefix);
+            if (this.router == null) {
+                this.router = new RouterContext();
+            }
+            this.router.setAutomatonMatching(this.automatonMatching);
+            this.router.setRouteCacheSize(this.routeCacheSize);
+            this.router.setRouteMissCacheSize(this.routeMissCacheSize);
+            this.router.setReverseCacheSize(this.reverseCacheSize);
+            if (this.stacklessExceptions && this.previousStacklessExceptions == null) {
+                this.previousStacklessExceptions = StacklessExceptions.isEnabled();
+                StacklessExceptions.setEnabled(true);
+            }
+            this.router.setParseThreads(this.parseThreads);
+            if (this.routeTableCacheDirectory != null) {
+                this.router.setRouteTableCacheDirectory(this.routeTableCacheDirectory);
+            }
+            this.router.load(fileResources, this.servletPrefix);
+            // static Router methods use this context outside of requests
+            Router.setDefaultContext(this.router);
+            Router.bind(null);
+            if (this.listeners != null) {
+                for (RouterListener listener : this.listeners) {
+                    this.router.addListener(listener);
+                }
+            }
+            if (this.metrics) {
+                this.routerMetrics = new RouterMetrics();
+                this.router.addListener(this.routerMetrics);
+                registerMetrics();
+            }
+            if (this.routeOrderInterval > 0) {
+                this.router.enableRouteOrderOptimization(this.routeProfileFile);
+                // start from the order learned before a restart
+                this.router.optimizeRouteOrder();
+                this.router.scheduleRouteOrderOptimization(this.routeOrderInterval);
+            }
+            if (this.watchRouteFiles) {
+                this.watcher = new RouteFilesWatcher(this.router, fileResources, this.servletPrefix, this.watchInterval);
+                this.watcher.start();
+            }
 
         } catch (IOException e) {
             throw new RouteFileParsingException(
@@ -142,6 +414,72 @@ public class RouterHandlerMapping extends AbstractHandlerMapping {
         }
     }
 
+    /**
+     * Stop watching the route files, reordering routes and collecting
+     * metrics, and restore the stack traces of routing exceptions.
+     */
+    public void destroy() {
+        if (this.previousStacklessExceptions != null) {
+            StacklessExceptions.setEnabled(this.previousStacklessExceptions);
+            this.previousStacklessExceptions = null;
+        }
+        if (this.watcher != null) {
+            this.watcher.stop();
+            this.watcher = null;
+        }
+        if (this.routeOrderInterval > 0) {
+            this.router.disableRouteOrderOptimization();
+        }
+        if (this.listeners != null) {
+            for (RouterListener listener : this.listeners) {
+                this.router.removeListener(listener);
+            }
+        }
+        if (this.routerMetrics != null) {
+            this.router.removeListener(this.routerMetrics);
+            if (this.registeredMetricsName != null) {
+                try {
+                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.registeredMetricsName);
+                } catch (JMException ex) {
+                    logger.warn("Could not unregister routing metrics " + this.registeredMetricsName, ex);
+                }
+                this.registeredMetricsName = null;
+            }
+        }
+    }
+
+    private void registerMetrics() {
+        String name = this.metricsObjectName;
+        if (name == null) {
+            name = "org.resthub.web.springmvc.router:type=RouterMetrics,name=router-"
+                    + Integer.toHexString(System.identityHashCode(this));
+        }
+        try {
+            ObjectName objectName = new ObjectName(name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this.routerMetrics, objectName);
+            this.registeredMetricsName = objectName;
+        } catch (JMException ex) {
+            logger.warn("Could not register routing metrics as " + name, ex);
+        }
+    }
+
+    /**
+     * Unbind the routing context of a request once it is complete. This
+     * interceptor comes first, so that it completes even if another one
+     * stops the request.
+     */
+    @Override
+    protected void extendInterceptors(List<Object> interceptors) {
+        interceptors.add(0, new HandlerInterceptorAdapter() {
+
+            @Override
+            public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                    Exception ex) throws Exception {
+                Router.bind(null);
+            }
+        });
+    }
+
     /**
      * Resolves a HandlerMethod (of type RouterHandler) given the current HTTP
      * request, using the Router instance.
@@ -153,21 +491,24 @@ public class RouterHandlerMapping extends AbstractHandlerMapping {
     protected Object getHandlerInternal(HttpServletRequest request)
             throws Exception {
 
-        HandlerMethod handler;
-        try {
-            // Adapt HTTPServletRequest for Router
-            HTTPRequestAdapter rq = HTTPRequestAdapter.parseRequest(request);
-            // Route request and resolve format
-            Router.Route route = Router.route(rq);
-            handler = this.methodResolver.resolveHandler(route, rq.action, rq);
-            // Add resolved route arguments to the request
-            request.setAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE, rq.routeArgs);
-
-        } catch (NoRouteFoundException nrfe) {
-            handler = null;
-            logger.trace("no route found for method[" + nrfe.method
-                    + "] and path[" + nrfe.path + "]");
+        // Adapt HTTPServletRequest for Router
+        HTTPRequestAdapter rq = HTTPRequestAdapter.parseRequest(request);
+        // Route request and resolve format
+        Router.Route route = this.router.findRoute(rq);
+        if (route == Router.NO_ROUTE) {
+            if (logger.isTraceEnabled()) {
+                logger.trace("no route found for method[" + rq.method
+                        + "] and path[" + rq.path + "]");
+            }
+            return null;
         }
+        HandlerMethod handler = this.methodResolver.resolveHandler(route, rq.action, rq);
+        // Add resolved route arguments to the request
+        request.setAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE, rq.routeArgs);
+        // Router static methods (reverse routing in views) use this context;
+        // bound only once a handler is returned, since the unbinding
+        // interceptor only runs for handled requests
+        Router.bind(this.router);
 
         return handler;
     }
@@ -0,0 +1,26 @@
+package org.resthub.web.springmvc.router;
+
+/**
+ * Listener notified of every request routed by a {@link RouterContext}, to
+ * collect routing metrics.
+ *
+ * <p>Listeners are called on the request thread, once the route is found:
+ * they should return quickly and never throw. Routing is neither timed nor
+ * observed while a context has no listener.
+ *
+ * @author Brian Clozel
+ * @see org.resthub.web.springmvc.router.RouterContext#addListener(RouterListener)
+ * @see org.resthub.web.springmvc.router.RouterMetrics
+ */
+public interface RouterListener {
+
+    /**
+     * @param request the routed request
+     * @param route the matching route, or {@link Router#NO_ROUTE} if no route
+     * matches
+     * @param candidates number of routes evaluated against the request; 0 if
+     * the route was found by an exact path lookup or in the routing cache
+     * @param nanos time spent routing the request, in nanoseconds
+     */
+    void requestRouted(HTTPRequestAdapter request, Router.Route route, int candidates, long nanos);
+}
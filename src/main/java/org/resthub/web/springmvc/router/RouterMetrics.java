@@ -0,0 +1,131 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.resthub.web.springmvc.router.Router.Route;
+
+/**
+ * Routing metrics: hits per route, misses, routes evaluated and routing time.
+ *
+ * <p>Counters are striped to limit contention between request threads, and
+ * routing times are recorded in a lock-free histogram. Route hits are kept by
+ * route signature (method, host, path and action), so that the counts of a
+ * route carry over reloads without keeping the reloaded routes in memory.
+ * Register an instance
+ * as a listener of a {@link RouterContext} to collect its metrics; the
+ * {@link RouterHandlerMapping} also exposes them as a JMX MBean when its
+ * <code>metrics</code> property is set.
+ *
+ * @author Brian Clozel
+ * @see org.resthub.web.springmvc.router.RouterContext#addListener(RouterListener)
+ */
+public class RouterMetrics implements RouterListener, RouterMetricsMBean {
+
+    private static final int TOP_ROUTES = 10;
+
+    private final StripedCounter requests = new StripedCounter(true);
+
+    private final StripedCounter misses = new StripedCounter(true);
+
+    private final StripedCounter candidates = new StripedCounter(true);
+
+    private final LatencyHistogram matchTimes = new LatencyHistogram();
+
+    /**
+     * Hits by route signature
+     */
+    private final ConcurrentHashMap<String, StripedCounter> routeHits = new ConcurrentHashMap<String, StripedCounter>();
+
+    public void requestRouted(HTTPRequestAdapter request, Route route, int evaluated, long nanos) {
+        requests.increment();
+        candidates.add(evaluated);
+        matchTimes.record(nanos);
+        if (route == Router.NO_ROUTE) {
+            misses.increment();
+            return;
+        }
+        String signature = RouteOrderOptimizer.signature(route);
+        StripedCounter hits = routeHits.get(signature);
+        if (hits == null) {
+            hits = new StripedCounter(false);
+            StripedCounter previous = routeHits.putIfAbsent(signature, hits);
+            if (previous != null) {
+                hits = previous;
+            }
+        }
+        hits.increment();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getHits() {
+        return requests.sum() - misses.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getCandidatesEvaluated() {
+        return candidates.sum();
+    }
+
+    public double getMeanCandidatesEvaluated() {
+        long count = requests.sum();
+        return count == 0 ? 0 : (double) candidates.sum() / count;
+    }
+
+    public double getMeanMatchTimeMicros() {
+        return matchTimes.mean() / 1000;
+    }
+
+    public double getMedianMatchTimeMicros() {
+        return matchTimes.percentile(50) / 1000.0;
+    }
+
+    public double getP99MatchTimeMicros() {
+        return matchTimes.percentile(99) / 1000.0;
+    }
+
+    /**
+     * Get the number of requests matched by a route, or by the routes with
+     * the same definition before reloads.
+     */
+    public long getHits(Route route) {
+        StripedCounter hits = routeHits.get(RouteOrderOptimizer.signature(route));
+        return hits == null ? 0 : hits.sum();
+    }
+
+    public String[] getTopRoutes() {
+        List<Map.Entry<String, Long>> counts = new ArrayList<Map.Entry<String, Long>>();
+        for (Map.Entry<String, StripedCounter> hits : routeHits.entrySet()) {
+            counts.add(new AbstractMap.SimpleImmutableEntry<String, Long>(hits.getKey(), hits.getValue().sum()));
+        }
+        Collections.sort(counts, new Comparator<Map.Entry<String, Long>>() {
+            public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+                return b.getValue().compareTo(a.getValue());
+            }
+        });
+        String[] top = new String[Math.min(TOP_ROUTES, counts.size())];
+        for (int i = 0; i < top.length; i++) {
+            top[i] = counts.get(i).getKey() + " : " + counts.get(i).getValue();
+        }
+        return top;
+    }
+
+    public void reset() {
+        requests.reset();
+        misses.reset();
+        candidates.reset();
+        matchTimes.reset();
+        routeHits.clear();
+    }
+}
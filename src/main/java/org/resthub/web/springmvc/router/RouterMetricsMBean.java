@@ -0,0 +1,42 @@
+package org.resthub.web.springmvc.router;
+
+/**
+ * JMX view of the routing metrics of a {@link RouterContext}.
+ *
+ * @author Brian Clozel
+ * @see org.resthub.web.springmvc.router.RouterMetrics
+ */
+public interface RouterMetricsMBean {
+
+    long getRequests();
+
+    long getHits();
+
+    long getMisses();
+
+    /**
+     * Total number of routes evaluated against requests
+     */
+    long getCandidatesEvaluated();
+
+    double getMeanCandidatesEvaluated();
+
+    double getMeanMatchTimeMicros();
+
+    /**
+     * Upper bound of the median routing time
+     */
+    double getMedianMatchTimeMicros();
+
+    /**
+     * Upper bound of the 99th percentile of routing times
+     */
+    double getP99MatchTimeMicros();
+
+    /**
+     * Most matched routes, with their hit counts
+     */
+    String[] getTopRoutes();
+
+    void reset();
+}
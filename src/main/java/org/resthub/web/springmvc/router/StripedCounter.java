@@ -0,0 +1,72 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter updated by many threads at once, spreading updates over several
+ * cells to limit contention; reading it sums the cells.
+ *
+ * @author Brian Clozel
+ * @see org.resthub.web.springmvc.router.RouterMetrics
+ */
+class StripedCounter {
+
+    private static final int STRIPES = stripes();
+
+    /**
+     * Longs between two used cells, so that cells are on distinct cache
+     * lines
+     */
+    private final int spacing;
+
+    private final AtomicLongArray cells;
+
+    /**
+     * @param padded whether cells should be on distinct cache lines: uses
+     * more memory, for counters updated by every request
+     */
+    StripedCounter(boolean padded) {
+        this.spacing = padded ? 8 : 1;
+        this.cells = new AtomicLongArray(STRIPES * spacing);
+    }
+
+    void increment() {
+        add(1);
+    }
+
+    void add(long value) {
+        cells.addAndGet(cell(), value);
+    }
+
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < cells.length(); i += spacing) {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+
+    void reset() {
+        for (int i = 0; i < cells.length(); i += spacing) {
+            cells.set(i, 0);
+        }
+    }
+
+    private int cell() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id * 0x9E3779B97F4A7C15L >>> 32);
+        return (hash & (STRIPES - 1)) * spacing;
+    }
+
+    /**
+     * Power of two at least equal to the number of processors
+     */
+    private static int stripes() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int stripes = 1;
+        while (stripes < processors) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+}
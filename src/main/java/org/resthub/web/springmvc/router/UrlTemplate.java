@@ -0,0 +1,188 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Route path or host compiled for reverse routing: literal chunks and
+ * argument slots, filled in a single pass.
+ *
+ * <p>A slot is written as <code>{name}</code> or
+ * <code>{&lt;regex&gt;name}</code>. Slots of arguments missing from the
+ * route, or without value, keep their source text.
+ *
+ * @author Brian Clozel
+ * @see org.resthub.web.springmvc.router.Router.Route#computeShortcuts()
+ */
+class UrlTemplate {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Literal chunks: chunk <code>i</code> comes before slot <code>i</code>,
+     * the last one after the last slot
+     */
+    private final String[] chunks;
+
+    private final String[] slotNames;
+
+    /**
+     * Source text of each slot
+     */
+    private final String[] slotSources;
+
+    /**
+     * Whether each slot is an argument of the route
+     */
+    private final boolean[] slotArgs;
+
+    /**
+     * @param template route path or host
+     * @param argNames names of the route arguments
+     */
+    UrlTemplate(String template, List<String> argNames) {
+        List<String> chunkList = new ArrayList<String>();
+        List<String> names = new ArrayList<String>();
+        List<String> sources = new ArrayList<String>();
+        int chunkStart = 0;
+        int i = template.indexOf('{');
+        while (i >= 0) {
+            int end = slotEnd(template, i);
+            if (end < 0) {
+                i = template.indexOf('{', i + 1);
+                continue;
+            }
+            chunkList.add(template.substring(chunkStart, i));
+            int nameStart = template.charAt(i + 1) == '<' ? template.indexOf('>', i) + 1 : i + 1;
+            names.add(template.substring(nameStart, end - 1));
+            sources.add(template.substring(i, end));
+            chunkStart = end;
+            i = template.indexOf('{', end);
+        }
+        chunkList.add(template.substring(chunkStart));
+        this.chunks = chunkList.toArray(new String[chunkList.size()]);
+        this.slotNames = names.toArray(new String[names.size()]);
+        this.slotSources = sources.toArray(new String[sources.size()]);
+        this.slotArgs = new boolean[slotNames.length];
+        for (int slot = 0; slot < slotNames.length; slot++) {
+            slotArgs[slot] = argNames.contains(slotNames[slot]);
+        }
+    }
+
+    /**
+     * @return whether this template has no slot
+     */
+    boolean isLiteral() {
+        return slotNames.length == 0;
+    }
+
+    /**
+     * Write this template, with the URL encoded value of each argument.
+     *
+     * @param out buffer to write to
+     * @param args argument values; the first element of a list value is used
+     * @param listValues whether list values fill slots; if not, their slots
+     * keep their source text
+     */
+    void fill(StringBuilder out, Map<String, Object> args, boolean listValues) {
+        for (int slot = 0; slot < slotNames.length; slot++) {
+            out.append(chunks[slot]);
+            Object value = slotArgs[slot] ? args.get(slotNames[slot]) : null;
+            if (value instanceof List<?>) {
+                value = listValues ? ((List<?>) value).get(0) : null;
+            }
+            if (value != null) {
+                encode(value.toString(), out);
+            } else {
+                out.append(slotSources[slot]);
+            }
+        }
+        out.append(chunks[chunks.length - 1]);
+    }
+
+    /**
+     * Find the end of a slot starting at the given '{'.
+     *
+     * @return the index after its closing '}', or -1 if there's no slot there
+     */
+    private static int slotEnd(String template, int start) {
+        int i = start + 1;
+        if (i < template.length() && template.charAt(i) == '<') {
+            int close = template.indexOf('>', i);
+            // the regex holds at least one char
+            if (close < i + 2) {
+                return -1;
+            }
+            i = close + 1;
+        }
+        int nameStart = i;
+        while (i < template.length() && isNameChar(template.charAt(i))) {
+            i++;
+        }
+        if (i == nameStart || i == template.length() || template.charAt(i) != '}') {
+            return -1;
+        }
+        return i + 1;
+    }
+
+    private static boolean isNameChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /**
+     * URL encode a value as UTF-8, with the same result as
+     * <code>URLEncoder.encode(value, "utf-8")</code>, without intermediate
+     * copies.
+     */
+    static void encode(String value, StringBuilder out) {
+        int length = value.length();
+        int i = 0;
+        while (i < length && isSafe(value.charAt(i))) {
+            i++;
+        }
+        if (i == length) {
+            out.append(value);
+            return;
+        }
+        out.append(value, 0, i);
+        while (i < length) {
+            char c = value.charAt(i++);
+            if (isSafe(c)) {
+                out.append(c);
+            } else if (c == ' ') {
+                out.append('+');
+            } else if (c < 0x80) {
+                escape(c, out);
+            } else if (c < 0x800) {
+                escape(0xC0 | (c >> 6), out);
+                escape(0x80 | (c & 0x3F), out);
+            } else if (Character.isHighSurrogate(c) && i < length && Character.isLowSurrogate(value.charAt(i))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(i++));
+                escape(0xF0 | (codePoint >> 18), out);
+                escape(0x80 | ((codePoint >> 12) & 0x3F), out);
+                escape(0x80 | ((codePoint >> 6) & 0x3F), out);
+                escape(0x80 | (codePoint & 0x3F), out);
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                // unpaired surrogates are replaced, like the UTF-8 encoder does
+                escape('?', out);
+            } else {
+                escape(0xE0 | (c >> 12), out);
+                escape(0x80 | ((c >> 6) & 0x3F), out);
+                escape(0x80 | (c & 0x3F), out);
+            }
+        }
+    }
+
+    /**
+     * @return whether URLEncoder leaves the given char as is
+     */
+    private static boolean isSafe(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '.' || c == '-' || c == '*' || c == '_';
+    }
+
+    private static void escape(int b, StringBuilder out) {
+        out.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+    }
+}
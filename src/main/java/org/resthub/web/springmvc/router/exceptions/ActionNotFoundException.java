@@ -4,6 +4,7 @@ package org.resthub.web.springmvc.router.exceptions;
 public class ActionNotFoundException extends Exception {
 
 	    private String action;
+	    private String reason;
 	   
 	    public ActionNotFoundException(String action, Throwable cause) {
 	        super(String.format("Action %s not found", action), cause);
@@ -13,6 +14,7 @@ public class ActionNotFoundException extends Exception {
 	    public ActionNotFoundException(String action, String message) {
 	    	super(String.format("Action %s not found", action));
 	        this.action = action;
+	        this.reason = message;
 	    }
 	    
 	    public String getAction() {
@@ -23,8 +25,17 @@ public class ActionNotFoundException extends Exception {
 	        return String.format(
 	                "Action <strong>%s</strong> could not be found. Error raised is <strong>%s</strong>", 
 	                action, 
+	                getCause() == null ? reason :
 	                getCause() instanceof ClassNotFoundException ? "ClassNotFound: "+getCause().getMessage() : getCause().getMessage()
 	        );
 	    }
+
+	    /**
+	     * Skip the stack trace if {@link StacklessExceptions} are enabled.
+	     */
+	    @Override
+	    public synchronized Throwable fillInStackTrace() {
+	        return StacklessExceptions.isEnabled() ? this : super.fillInStackTrace();
+	    }
 	    
 }
@@ -31,5 +31,13 @@ public class NoHandlerFoundException extends RuntimeException {
     	return this.getMessage()+" action["+this.action+"] args["+this.args+"]";
     }
 
+    /**
+     * Skip the stack trace if {@link StacklessExceptions} are enabled.
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return StacklessExceptions.isEnabled() ? this : super.fillInStackTrace();
+    }
+
 
 }
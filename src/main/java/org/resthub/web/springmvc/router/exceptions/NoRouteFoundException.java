@@ -20,4 +20,12 @@ public class NoRouteFoundException extends RuntimeException {
 
         return this.getMessage() + " method[" + this.method + "] path[" + this.path + "]";
     }
+
+    /**
+     * Skip the stack trace if {@link StacklessExceptions} are enabled.
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return StacklessExceptions.isEnabled() ? this : super.fillInStackTrace();
+    }
 }
@@ -0,0 +1,31 @@
+package org.resthub.web.springmvc.router.exceptions;
+
+/**
+ * Switch for the stack traces of routing exceptions.
+ *
+ * <p>{@link NoRouteFoundException}, {@link NoHandlerFoundException} and
+ * {@link ActionNotFoundException} report expected routing misses, such as
+ * unknown URLs or link fallbacks in templates: once enabled, these exceptions
+ * don't capture their stack trace, which costs more than the rest of the
+ * routing. This applies to all routers of the class loader. It can also be
+ * enabled with the <code>org.resthub.web.springmvc.router.stacklessExceptions</code>
+ * system property.
+ *
+ * @author Brian Clozel
+ * @see org.resthub.web.springmvc.router.RouterHandlerMapping#setStacklessExceptions(boolean)
+ */
+public final class StacklessExceptions {
+
+    private static volatile boolean enabled = Boolean.getBoolean("org.resthub.web.springmvc.router.stacklessExceptions");
+
+    private StacklessExceptions() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        StacklessExceptions.enabled = enabled;
+    }
+}
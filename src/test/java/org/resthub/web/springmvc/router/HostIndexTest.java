@@ -0,0 +1,65 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.resthub.web.springmvc.router.Router.Route;
+
+public class HostIndexTest {
+
+    private List<Route> routes;
+
+    @Before
+    public void setUp() {
+        routes = new ArrayList<Route>();
+        routes.add(Router.getRoute("GET", "/home", "pageController.home", null, null));
+        routes.add(Router.getRoute("GET", "myhost.com/news", "newsController.myhost", null, null));
+        routes.add(Router.getRoute("GET", "{brand}.domain.org/news", "newsController.brand", null, null));
+        routes.add(Router.getRoute("GET", "{team}.dev.domain.org/news", "newsController.team", null, null));
+        routes.add(Router.getRoute("GET", "shop.domain.org/news", "newsController.shop", null, null));
+        routes.add(Router.getRoute("GET", "{a}.{b}.com/news", "newsController.other", null, null));
+    }
+
+    @Test
+    public void testWildcardSuffix() {
+        Assert.assertEquals("domain.org", HostIndex.wildcardSuffix("{brand}.domain.org"));
+        Assert.assertNull(HostIndex.wildcardSuffix("{a}.{b}.com"));
+        Assert.assertNull(HostIndex.wildcardSuffix("www.{a}.com"));
+        Assert.assertNull(HostIndex.wildcardSuffix("{a}domain.org"));
+    }
+
+    @Test
+    public void testPartitions() {
+        HostIndex index = new HostIndex(routes);
+
+        assertRoutes(index, null, 0, 1, 2, 3, 4, 5);
+        assertRoutes(index, "samplehost.org", 0, 5);
+        assertRoutes(index, "myhost.com", 0, 1, 5);
+        assertRoutes(index, "acme.domain.org", 0, 2, 5);
+        assertRoutes(index, "domain.org", 0, 5);
+        assertRoutes(index, "x.dev.domain.org", 0, 2, 3, 5);
+        assertRoutes(index, "shop.domain.org", 0, 2, 4, 5);
+    }
+
+    @Test
+    public void testNoHostRoutes() {
+        List<Route> hostless = new ArrayList<Route>();
+        hostless.add(routes.get(0));
+        HostIndex index = new HostIndex(hostless);
+
+        Assert.assertEquals(1, index.size());
+        Assert.assertEquals(0, index.partition("myhost.com"));
+    }
+
+    private void assertRoutes(HostIndex index, String host, int... expected) {
+        BitSet bits = index.routes(index.partition(host));
+        Assert.assertEquals(host, expected.length, bits.cardinality());
+        for (int i : expected) {
+            Assert.assertTrue(host + " " + i, bits.get(i));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.resthub.web.springmvc.router;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class LruCacheTest {
+
+    @Test
+    public void testHitsAndMisses() {
+        LruCache<String, String> cache = new LruCache<String, String>(100);
+
+        Assert.assertNull(cache.get("a"));
+        cache.put("a", "1");
+        Assert.assertEquals("1", cache.get("a"));
+        Assert.assertEquals("1", cache.get("a"));
+
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(2.0 / 3, cache.getHitRatio(), 0.0001);
+    }
+
+    @Test
+    public void testEviction() {
+        LruCache<Integer, Integer> cache = new LruCache<Integer, Integer>(32);
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+            // keep the first entry recently used
+            Assert.assertEquals(Integer.valueOf(0), cache.get(0));
+        }
+        Assert.assertTrue(cache.size() <= 32);
+        Assert.assertEquals(1000 - cache.size(), cache.getEvictions());
+
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testSizeNeverExceedsMaxSize() {
+        for (int maxSize : new int[] {1, 3, 10, 17, 100}) {
+            LruCache<Integer, Integer> cache = new LruCache<Integer, Integer>(maxSize);
+            for (int i = 0; i < 1000; i++) {
+                cache.put(i, i);
+                Assert.assertTrue(cache.size() <= maxSize);
+            }
+            // evictions only happen in full segments
+            Assert.assertEquals(maxSize, cache.size());
+            Assert.assertEquals(maxSize, cache.getMaxSize());
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.resthub.web.springmvc.router;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.resthub.web.springmvc.router.exceptions.RouteFileParsingException;
+
+public class QueryStringTest {
+
+    @Test
+    public void testFindAndValue() {
+        QueryString qs = new QueryString("a=1&b&c=&d%20e=x+y&a=2");
+
+        Assert.assertEquals("1", qs.value(qs.find("a")));
+        Assert.assertTrue(qs.find("b") >= 0);
+        Assert.assertNull(qs.value(qs.find("b")));
+        Assert.assertNull(qs.value(qs.find("c")));
+        Assert.assertEquals("x y", qs.value(qs.find("d e")));
+        Assert.assertEquals(-1, qs.find("e"));
+
+        Assert.assertEquals(-1, new QueryString(null).find("a"));
+        Assert.assertEquals(-1, new QueryString("").find(""));
+    }
+
+    @Test(expected = RouteFileParsingException.class)
+    public void testBadParameter() {
+        new QueryString("a=1&b=2=3").find("c");
+    }
+
+    @Test
+    public void testMethodOverride() {
+        Assert.assertEquals("PUT", QueryString.methodOverride("x-http-method-override=PUT"));
+        Assert.assertEquals("DELETE", QueryString.methodOverride("a=1&x-http-method-override=PUT&x-http-method-override=DELETE"));
+        Assert.assertEquals("POST", QueryString.methodOverride("x-http-method-override=POST&x-http-method-override=PATCH"));
+        Assert.assertNull(QueryString.methodOverride("x-http-method-override=patch"));
+        Assert.assertNull(QueryString.methodOverride(null));
+    }
+}
@@ -0,0 +1,125 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class ReverseCacheTest {
+
+    @Before
+    public void setUp() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.addHeader("host", "example.com");
+        HTTPRequestAdapter.parseRequest(request);
+    }
+
+    @After
+    public void tearDown() {
+        HTTPRequestAdapter.current.remove();
+    }
+
+    @Test
+    public void testHitsReturnCopies() {
+        RouterContext context = new RouterContext();
+        context.setReverseCacheSize(10);
+        context.getRoutes().add(Router.getRoute("GET", "/users/{id}", "userController.show", null, null));
+
+        Map<String, Object> args = new HashMap<String, Object>();
+        args.put("id", 42);
+        args.put("tab", Arrays.asList("a", "b"));
+        Router.ActionDefinition first = context.reverse("userController.show", args);
+        Router.ActionDefinition second = context.reverse("userController.show", new HashMap<String, Object>(args));
+
+        Assert.assertEquals("/users/42?tab=a&tab=b", second.url);
+        Assert.assertEquals("GET", second.method);
+        Assert.assertNotSame(first, second);
+        Assert.assertNotSame(first.args, second.args);
+        Assert.assertEquals(1, context.getReverseCache().getHits());
+        Assert.assertEquals(1, context.getReverseCache().getMisses());
+
+        // callers changing the result don't change the cached one
+        second.addRef("top");
+        second.args.put("ref", "home");
+        Assert.assertEquals("/users/42?tab=a&tab=b", context.reverse("userController.show", args).url);
+    }
+
+    @Test
+    public void testMutableArgsNotCached() {
+        RouterContext context = new RouterContext();
+        context.setReverseCacheSize(10);
+        context.getRoutes().add(Router.getRoute("GET", "/users/{id}", "userController.show", null, null));
+
+        List<Object> ids = new ArrayList<Object>();
+        ids.add(new StringBuilder("7"));
+        Map<String, Object> args = new HashMap<String, Object>();
+        args.put("id", ids);
+        Assert.assertEquals("/users/7", context.reverse("userController.show", args).url);
+        ((StringBuilder) ids.get(0)).append('8');
+        Assert.assertEquals("/users/78", context.reverse("userController.show", args).url);
+        Assert.assertEquals(0, context.getReverseCache().size());
+    }
+
+    @Test
+    public void testActionArgsNotCached() {
+        RouterContext context = new RouterContext();
+        context.setReverseCacheSize(10);
+        context.getRoutes().add(Router.getRoute("GET", "/{controller}/list", "{controller}.list", null, null));
+
+        Map<String, Object> args = new HashMap<String, Object>();
+        Assert.assertEquals("/orders/list", context.reverse("orders.list", args).url);
+        Assert.assertEquals("orders", args.get("controller"));
+        args = new HashMap<String, Object>();
+        Assert.assertEquals("/orders/list", context.reverse("orders.list", args).url);
+        // a cache hit would not set the action args
+        Assert.assertEquals("orders", args.get("controller"));
+    }
+
+    @Test
+    public void testClearedOnReload() {
+        RouterContext context = new RouterContext();
+        context.setReverseCacheSize(10);
+        context.getRoutes().add(Router.getRoute("GET", "/users/{id}", "userController.show", null, null));
+
+        Map<String, Object> args = new HashMap<String, Object>();
+        args.put("id", "1");
+        Assert.assertEquals("/users/1", context.reverse("userController.show", args).url);
+        context.getRoutes().add(0, Router.getRoute("GET", "/people/{id}", "userController.show", null, null));
+        Assert.assertEquals("/people/1", context.reverse("userController.show", args).url);
+        Assert.assertEquals(0, context.getReverseCache().getHits());
+    }
+
+    @Test
+    public void testFormatInKey() {
+        RouterContext context = new RouterContext();
+        context.setReverseCacheSize(10);
+        context.getRoutes().add(Router.getRoute("GET", "/users/{id}.json", "userController.show", "(format:'json')", null));
+        context.getRoutes().add(Router.getRoute("GET", "/users/{id}", "userController.show", null, null));
+
+        Map<String, Object> args = new HashMap<String, Object>();
+        args.put("id", "1");
+        HTTPRequestAdapter.current.get().format = "json";
+        Assert.assertEquals("/users/1.json", context.reverse("userController.show", args).url);
+        HTTPRequestAdapter.current.get().format = "html";
+        Assert.assertEquals("/users/1", context.reverse("userController.show", args).url);
+        HTTPRequestAdapter.current.get().format = "json";
+        Assert.assertEquals("/users/1.json", context.reverse("userController.show", args).url);
+        Assert.assertEquals(1, context.getReverseCache().getHits());
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        RouterContext context = new RouterContext();
+        Assert.assertNull(context.getReverseCache());
+        Assert.assertEquals(0, context.getReverseCacheSize());
+        context.setReverseCacheSize(5);
+        Assert.assertEquals(5, context.getReverseCacheSize());
+    }
+}
@@ -0,0 +1,102 @@
+package org.resthub.web.springmvc.router;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.resthub.web.springmvc.router.exceptions.NoHandlerFoundException;
+
+public class ReverseHandleTest {
+
+    @Test
+    public void testPositionalValues() throws Exception {
+        RouterContext context = new RouterContext();
+        context.getRoutes().add(Router.getRoute("GET", "{tenant}.example.com/users/{<[0-9]+>id}/{tab}", "userController.show", null, null));
+        context.getRoutes().add(Router.getRoute("GET", "/users/{name}", "userController.show", null, null));
+        ReverseHandle handle = context.handle("userController.show");
+
+        Assert.assertEquals(Arrays.asList("tenant", "id", "tab"), handle.getArgNames());
+        Assert.assertEquals("/users/42/info", handle.url("acme", 42, "info"));
+        StringBuilder out = new StringBuilder("<a href=\"");
+        handle.appendUrl(out, "acme", 7, "a b");
+        Assert.assertEquals("<a href=\"/users/7/a+b", out.toString());
+        StringWriter writer = new StringWriter();
+        handle.appendUrl(writer, "acme", 7, "info");
+        Assert.assertEquals("/users/7/info", writer.toString());
+
+        // values not matching the first route fall back to the next ones
+        try {
+            handle.url("acme", "john");
+            Assert.fail("no route should reverse a missing tab");
+        } catch (NoHandlerFoundException ex) {
+        }
+        try {
+            handle.url("acme", 1, "info", "extra");
+            Assert.fail("the handle takes at most 3 values");
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+
+    @Test
+    public void testNamedValuesLikeReverse() {
+        RouterContext context = new RouterContext();
+        context.getRoutes().add(Router.getRoute("GET", "/{controller}/list", "{controller}.list", null, null));
+        context.getRoutes().add(Router.getRoute("GET", "/users/{<[0-9]+>id}", "userController.show", null, null));
+        context.getRoutes().add(Router.getRoute("GET", "/users/{name}", "userController.show", null, null));
+
+        Map<String, Object> args = new HashMap<String, Object>();
+        args.put("name", "john");
+        args.put("page", Arrays.asList("1", "2"));
+        ReverseHandle handle = context.handle("userController.show");
+        Assert.assertEquals(context.reverse("userController.show", new HashMap<String, Object>(args)).url,
+                handle.url(args));
+        Assert.assertEquals("/users/john?page=1&page=2", handle.url(args));
+
+        Map<String, Object> none = new HashMap<String, Object>();
+        Assert.assertEquals("/orders/list", context.handle("orders.list").url(none));
+        // unlike Router.reverse, the arguments are left unchanged
+        Assert.assertTrue(none.isEmpty());
+        Assert.assertTrue(context.handle("orders.list").getArgNames().isEmpty());
+    }
+
+    @Test
+    public void testResolvedAgainOnReload() {
+        RouterContext context = new RouterContext();
+        context.getRoutes().add(Router.getRoute("GET", "/users/{id}", "userController.show", null, null));
+        ReverseHandle handle = context.handle("userController.show");
+        Assert.assertEquals("/users/1", handle.url("1"));
+
+        context.getRoutes().add(0, Router.getRoute("GET", "/people/{id}", "userController.show", null, null));
+        Assert.assertEquals("/people/1", handle.url("1"));
+    }
+
+    @Test
+    public void testTryUrl() throws Exception {
+        RouterContext context = new RouterContext();
+        context.getRoutes().add(Router.getRoute("GET", "/users/{<[0-9]+>id}", "userController.show", null, null));
+        ReverseHandle handle = context.handle("userController.show");
+
+        Assert.assertEquals("/users/1", handle.tryUrl(1));
+        Assert.assertNull(handle.tryUrl("john"));
+        Assert.assertNull(handle.tryUrl(new HashMap<String, Object>()));
+        StringBuilder out = new StringBuilder("link:");
+        Assert.assertFalse(handle.tryAppendUrl(out, "john"));
+        Assert.assertEquals("link:", out.toString());
+        Assert.assertTrue(handle.tryAppendUrl(out, 2));
+        Assert.assertEquals("link:/users/2", out.toString());
+
+        // reloaded routes may not reverse the action anymore
+        context.getRoutes().clear();
+        Assert.assertNull(handle.tryUrl());
+    }
+
+    @Test(expected = NoHandlerFoundException.class)
+    public void testUnknownAction() {
+        RouterContext context = new RouterContext();
+        context.getRoutes().add(Router.getRoute("GET", "/users/{id}", "userController.show", null, null));
+        context.handle("userController.delete");
+    }
+}
@@ -0,0 +1,59 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.resthub.web.springmvc.router.Router.Route;
+import org.resthub.web.springmvc.router.exceptions.NoHandlerFoundException;
+
+public class ReverseIndexTest {
+
+    @Test
+    public void testCandidatesKeepPriorityOrder() {
+        List<Route> routes = new ArrayList<Route>();
+        routes.add(Router.getRoute("GET", "/users/{id}", "userController.show", null, null));
+        routes.add(Router.getRoute("GET", "/{controller}/list", "{controller}.list", null, null));
+        routes.add(Router.getRoute("GET", "/users/{id}/profile", "userController.show", null, null));
+        routes.add(Router.getRoute("GET", "/pages/home", "pageController.home", null, null));
+        ReverseIndex index = new ReverseIndex(routes);
+
+        Assert.assertEquals(Arrays.asList(routes.get(0), routes.get(1), routes.get(2)),
+                index.candidates("UserController.SHOW"));
+        Assert.assertEquals(Arrays.asList(routes.get(1), routes.get(3)), index.candidates("pageController.home"));
+        Assert.assertEquals(Arrays.asList(routes.get(1)), index.candidates("orderController.list"));
+    }
+
+    @Test
+    public void testLiteralActions() {
+        Assert.assertTrue(ReverseIndex.isLiteral("userController.show_2"));
+        Assert.assertFalse(ReverseIndex.isLiteral("{controller}.show"));
+        Assert.assertFalse(ReverseIndex.isLiteral("userController.show$"));
+        Assert.assertFalse(ReverseIndex.isLiteral(""));
+    }
+
+    @Test
+    public void testReverseThroughIndex() {
+        RouterContext context = new RouterContext();
+        context.getRoutes().add(Router.getRoute("GET", "/users/{<[0-9]+>id}", "userController.show", null, null));
+        context.getRoutes().add(Router.getRoute("GET", "/users/{name}", "userController.show", null, null));
+        context.getRoutes().add(Router.getRoute("GET", "/{controller}/list", "{controller}.list", null, null));
+
+        Map<String, Object> args = new HashMap<String, Object>();
+        args.put("name", "john");
+        Assert.assertEquals("/users/john", context.reverse("userController.show", args).url);
+        args = new HashMap<String, Object>();
+        args.put("id", "12");
+        Assert.assertEquals("/users/12", context.reverse("USERCONTROLLER.show", args).url);
+        Assert.assertEquals("/orders/list", context.reverse("orders.list", new HashMap<String, Object>()).url);
+        try {
+            context.reverse("userController.delete", new HashMap<String, Object>());
+            Assert.fail("no route should reverse userController.delete");
+        } catch (NoHandlerFoundException ex) {
+        }
+    }
+}
@@ -486,4 +486,18 @@ public class ReverseRoutingTest {
         Assert.assertEquals("/qsparamnullandsamekeystaticparam?qsParamA=someStaticVal", action.url);    
     }
    
+    @Test
+    public void testTryReverse() {
+
+        Map<String,Object> params = new HashMap<String, Object>();
+        params.put("myName", "stromgol");
+        params.put("myStaticArg", "someStaticVal");
+        Assert.assertNull(Router.tryReverse("myTestController.qsParamPlayNiceWithOtherRoutingFeatures", params));
+        Assert.assertNull(Router.tryReverse("myTestController.unknownAction"));
+
+        ActionDefinition action = Router.tryReverse("myTestController.simpleAction");
+        Assert.assertNotNull(action);
+        Assert.assertEquals("/simpleaction", action.url);
+    }
+
 }
@@ -0,0 +1,94 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.HashMap;
+import java.util.Map;
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.resthub.web.springmvc.router.Router.Route;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class RouteArgsTest {
+
+    @Test
+    public void testPathAndStaticArgs() {
+        Route route = Router.getRoute("GET", "/user/{<[0-9]+>id}/{name}", "userController.show", "(name:'static',type:'user')", null);
+        Map<String, String> args = route.matchesRequest("/user/42/bob", null, null, null);
+
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("id", "42");
+        expected.put("name", "static");
+        expected.put("type", "user");
+        Assert.assertEquals(expected, args);
+        Assert.assertEquals(expected.hashCode(), args.hashCode());
+        Assert.assertEquals("42", args.get("id"));
+        Assert.assertFalse(args.containsKey("bob"));
+    }
+
+    @Test
+    public void testHostArg() {
+        Route route = Router.getRoute("GET", "{client}.example.com/home", "homeController.show", null, null);
+
+        Map<String, String> args = route.matchesRequest("/home", null, "acme.example.com", null);
+        Assert.assertEquals(1, args.size());
+        Assert.assertEquals("acme", args.get("client"));
+
+        // host argument isn't set if the request host is unknown
+        args = route.matchesRequest("/home", null, null, null);
+        Assert.assertTrue(args.isEmpty());
+        Assert.assertFalse(args.containsKey("client"));
+    }
+
+    @Test
+    public void testCopiedOnWrite() {
+        Route route = Router.getRoute("GET", "/user/{id}/{name}", "userController.show", null, null);
+        RouteArgs args = (RouteArgs) route.matchesRequest("/user/42/bob", null, null, null);
+        RouteArgs other = args.copy();
+
+        Assert.assertEquals("42", args.put("id", "1"));
+        Assert.assertEquals("bob", args.remove("name"));
+        args.put("tab", "info");
+        Assert.assertEquals("1", args.get("id"));
+        Assert.assertEquals(2, args.size());
+        Assert.assertFalse(args.containsKey("name"));
+        // copies of the match are left unchanged
+        Assert.assertEquals("42", other.get("id"));
+        Assert.assertEquals(2, other.size());
+    }
+
+    @Test
+    public void testRequestArgsCopiedOnWrite() throws Exception {
+        RouterContext context = new RouterContext();
+        context.setRouteCacheSize(10);
+        context.getRoutes().add(Router.getRoute("GET", "/users", "userController.list", "(type:'user')", null));
+        context.getRoutes().add(Router.getRoute("GET", "/users/{id}", "userController.show", null, null));
+        try {
+            for (String path : new String[] {"/users", "/users/42", "/users/42"}) {
+                HTTPRequestAdapter request = request(path);
+                context.findRoute(request);
+                // Spring reads the arguments later, the map is only built on change
+                Assert.assertFalse(request.routeArgs instanceof HashMap);
+                request.routeArgs.put("type", "admin");
+                Assert.assertEquals("admin", request.routeArgs.get("type"));
+            }
+            Assert.assertEquals(1, context.getRouteCache().getHits());
+
+            // neither the static route nor the cached match were changed
+            HTTPRequestAdapter request = request("/users");
+            context.findRoute(request);
+            Assert.assertEquals("user", request.routeArgs.get("type"));
+            request = request("/users/42");
+            context.findRoute(request);
+            Assert.assertEquals(1, request.routeArgs.size());
+            Assert.assertEquals("42", request.routeArgs.get("id"));
+        } finally {
+            HTTPRequestAdapter.current.remove();
+        }
+    }
+
+    private static HTTPRequestAdapter request(String path) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.addHeader("host", "example.com");
+        return HTTPRequestAdapter.parseRequest(request);
+    }
+}
@@ -0,0 +1,90 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.resthub.web.springmvc.router.Router.Route;
+
+public class RouteAutomatonTest {
+
+    private List<Route> routes;
+
+    @Before
+    public void setUp() {
+        routes = new ArrayList<Route>();
+        routes.add(Router.getRoute("GET", "/user/?", "userController.listAll", null, null));
+        routes.add(Router.getRoute("GET", "/user/{<[0-9]+>id}", "userController.showUser", null, null));
+        routes.add(Router.getRoute("GET", "/user/{name}/posts/{<\\d*>page}", "userController.posts", null, null));
+        routes.add(Router.getRoute("GET", "/files/{<.*>path}", "fileController.show", null, null));
+        routes.add(Router.getRoute("GET", "/user/{<[a-z\\-_]+>slug}", "userController.showBySlug", null, null));
+        routes.add(Router.getRoute("GET", "/page-{<[0-9]+>id}-{<[a-z]+>lang}", "pageController.show", null, null));
+        routes.add(Router.getRoute("GET", "/{<[^/]+>any}", "pageController.any", null, null));
+    }
+
+    @Test
+    public void testFallbackRoutes() {
+        RouteAutomaton automaton = RouteAutomaton.build(routes.toArray(new Route[routes.size()]));
+        Assert.assertNotNull(automaton);
+        // ".*" isn't a class atom
+        Assert.assertTrue(automaton.fallbackRoutes.get(3));
+        Assert.assertEquals(1, automaton.fallbackRoutes.cardinality());
+    }
+
+    @Test
+    public void testAcceptedRoutes() {
+        RouteAutomaton automaton = RouteAutomaton.build(routes.toArray(new Route[routes.size()]));
+
+        assertAccepted(automaton, "/user", 0, 6);
+        assertAccepted(automaton, "/user/", 0);
+        assertAccepted(automaton, "/user/42", 1);
+        assertAccepted(automaton, "/user/bob_1/posts/", 2);
+        assertAccepted(automaton, "/user/bob", 4);
+        assertAccepted(automaton, "/page-12-fr", 5, 6);
+        assertAccepted(automaton, "/unknown/path");
+    }
+
+    @Test
+    public void testCaptures() {
+        RouteAutomaton automaton = RouteAutomaton.build(routes.toArray(new Route[routes.size()]));
+
+        int[] offsets = automaton.captures(2, "/user/bob/posts/12");
+        Assert.assertEquals("bob", "/user/bob/posts/12".substring(offsets[0], offsets[1]));
+        Assert.assertEquals("12", "/user/bob/posts/12".substring(offsets[2], offsets[3]));
+
+        offsets = automaton.captures(5, "/page-12-fr");
+        Assert.assertEquals("12", "/page-12-fr".substring(offsets[0], offsets[1]));
+        Assert.assertEquals("fr", "/page-12-fr".substring(offsets[2], offsets[3]));
+    }
+
+    @Test
+    public void testSameResultsAsRegexMatching() {
+        RouteIndex.MethodTable regex = new RouteIndex(routes, false).table("GET");
+        RouteIndex.MethodTable automaton = new RouteIndex(routes, true).table("GET");
+        Assert.assertNotNull(automaton.automaton);
+
+        String[] paths = {"/user", "/user/", "/user/42", "/user/bob/posts/3", "/user/bob/posts/",
+            "/files/a/b", "/user/my-slug", "/page-1-en", "/page-1-", "/home", "/", "/a/b"};
+        for (String path : paths) {
+            RouteIndex.RouteMatch expected = regex.match(path, null, null, null);
+            RouteIndex.RouteMatch actual = automaton.match(path, null, null, null);
+            if (expected == null) {
+                Assert.assertNull(path, actual);
+                continue;
+            }
+            Assert.assertSame(path, expected.route, actual.route);
+            Assert.assertEquals(path, expected.args, actual.args);
+        }
+    }
+
+    private void assertAccepted(RouteAutomaton automaton, String path, int... expected) {
+        int[] accepted = automaton.accepted(path);
+        Assert.assertEquals(path, expected.length, accepted.length);
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(path, expected[i], accepted[i]);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.Assert;
+
+import jregex.Matcher;
+import jregex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+public class RouteFileTokenizerTest {
+
+    /**
+     * Regex route files used to be parsed with
+     */
+    private static final Pattern routePattern = new Pattern("^({method}GET|POST|PUT|DELETE|OPTIONS|HEAD|\\*)[(]?({headers}[^)]*)(\\))?\\s+({path}.*/[^\\s]*)\\s+({qsParams}\\[.*\\]\\s+)?({action}[^\\s(]+)({params}.+)?(\\s*)$");
+
+    private final RouteFileTokenizer tokenizer = new RouteFileTokenizer();
+
+    @Test
+    public void testSameTokensAsRegex() throws Exception {
+        List<String> lines = new ArrayList<String>();
+        for (String file : new String[]{"routes.conf", "addroutes.conf", "wildcard-a.conf"}) {
+            lines.addAll(IOUtils.readLines(new ClassPathResource(file).getInputStream()));
+        }
+        lines.add("GET(application/json,   text/html) /json    Controller.json");
+        lines.add("\tPOST  /p/{id}\t[a=b  !c]   Controller.post (x:'a   b')  ");
+
+        int routes = 0;
+        for (String line : lines) {
+            int result = tokenizer.tokenize(line, 0, line.length());
+            String normalized = line.trim().replaceAll("\\s+", " ");
+            if (normalized.length() == 0 || normalized.startsWith("#")) {
+                Assert.assertEquals(RouteFileTokenizer.SKIP, result);
+                continue;
+            }
+            Matcher matcher = routePattern.matcher(normalized);
+            Assert.assertTrue(line, matcher.matches());
+            Assert.assertEquals(line, RouteFileTokenizer.ROUTE, result);
+            Assert.assertEquals(matcher.group("method"), tokenizer.method);
+            Assert.assertEquals(matcher.group("headers"), tokenizer.headers);
+            Assert.assertEquals(matcher.group("path"), tokenizer.path);
+            Assert.assertEquals(matcher.group("qsParams"), tokenizer.qsParams);
+            Assert.assertEquals(matcher.group("action"), tokenizer.action);
+            Assert.assertEquals(matcher.group("params"), tokenizer.params);
+            routes++;
+        }
+        Assert.assertEquals(39, routes);
+    }
+
+    @Test
+    public void testErrorColumns() {
+        assertInvalid("FETCH /path Controller.action", 1);
+        assertInvalid("GET(text/html /path Controller.action", 4);
+        assertInvalid("GET   path Controller.action", 7);
+        assertInvalid("  GET /path", 12);
+        assertInvalid("GET /path [a=b Controller.action", 11);
+    }
+
+    @Test
+    public void testErrorsReportPosition() throws Exception {
+        List<String> errors = new ArrayList<String>();
+        Router.parse("GET /a Controller.a\n\nGET /b\n", 0, 27, 1, "", "test.conf", errors);
+
+        Assert.assertEquals(1, errors.size());
+        Assert.assertTrue(errors.get(0), errors.get(0).startsWith("test.conf:3:7: Invalid route definition (missing action)"));
+    }
+
+    private void assertInvalid(String line, int column) {
+        Assert.assertEquals(line, RouteFileTokenizer.INVALID, tokenizer.tokenize(line, 0, line.length()));
+        Assert.assertEquals(line, column, tokenizer.errorColumn);
+    }
+}
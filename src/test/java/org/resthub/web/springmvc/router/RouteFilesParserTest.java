@@ -0,0 +1,68 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.resthub.web.springmvc.router.Router.Route;
+
+public class RouteFilesParserTest {
+
+    @Test
+    public void testParallelParseKeepsOrder() {
+        List<String> contents = Arrays.asList(routeFile("a", 1000), routeFile("b", 300));
+        List<String> paths = Arrays.asList("a.conf", "b.conf");
+
+        List<List<Route>> sequential = new RouteFilesParser(1).parse(contents, paths, "/app", null);
+        RouteFilesParser parser = new RouteFilesParser(4);
+        List<List<Route>> parallel;
+        try {
+            parser.parse(contents, paths, "/app", null);
+            // the pool is kept for the next parses
+            parallel = parser.parse(contents, paths, "/app", null);
+        } finally {
+            parser.shutdown();
+        }
+
+        Assert.assertEquals(2, parallel.size());
+        Assert.assertEquals(1000, parallel.get(0).size());
+        Assert.assertEquals(300, parallel.get(1).size());
+        for (int file = 0; file < 2; file++) {
+            for (int i = 0; i < parallel.get(file).size(); i++) {
+                Route route = parallel.get(file).get(i);
+                Assert.assertEquals(sequential.get(file).get(i).toString(), route.toString());
+                Assert.assertEquals(i + 1, route.routesFileLine);
+                Assert.assertEquals(paths.get(file), route.routesFile);
+            }
+        }
+        Assert.assertEquals("/app/a/999/{id}", parallel.get(0).get(999).path);
+    }
+
+    @Test
+    public void testErrorsInLineOrder() {
+        StringBuilder content = new StringBuilder(routeFile("a", 600));
+        content.append("not a route\n");
+        content.insert(0, "invalid\n");
+        List<String> errors = new ArrayList<String>();
+
+        RouteFilesParser parser = new RouteFilesParser(4);
+        List<List<Route>> routes = parser.parse(Arrays.asList(content.toString()),
+                Arrays.asList("a.conf"), "", errors);
+        parser.shutdown();
+
+        Assert.assertEquals(600, routes.get(0).size());
+        Assert.assertEquals(2, errors.size());
+        Assert.assertTrue(errors.get(0).startsWith("a.conf:1:"));
+        Assert.assertTrue(errors.get(1).startsWith("a.conf:602:"));
+    }
+
+    private static String routeFile(String name, int size) {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            content.append("GET /").append(name).append('/').append(i).append("/{id} myTestController.action").append(i).append('\n');
+        }
+        return content.toString();
+    }
+}
@@ -0,0 +1,66 @@
+package org.resthub.web.springmvc.router;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+public class RouteFilesWatcherTest {
+
+    private File file;
+
+    private RouterContext context;
+
+    private RouteFilesWatcher watcher;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("routes", ".conf");
+        FileUtils.writeStringToFile(file, "GET /first myTestController.simpleAction\n");
+        List<Resource> files = Arrays.<Resource>asList(new FileSystemResource(file));
+        context = new RouterContext();
+        context.load(files, "");
+        watcher = new RouteFilesWatcher(context, files, "", 1000);
+    }
+
+    @After
+    public void tearDown() {
+        watcher.stop();
+        file.delete();
+    }
+
+    @Test
+    public void testReloadOnceSettled() throws Exception {
+        Assert.assertFalse(watcher.check());
+
+        FileUtils.writeStringToFile(file, "GET /first myTestController.simpleAction\n"
+                + "GET /second myTestController.simpleAction\n");
+        // the file just changed, wait for the next check
+        Assert.assertFalse(watcher.check());
+        Assert.assertEquals(1, context.getRoutes().size());
+
+        Assert.assertTrue(watcher.check());
+        Assert.assertEquals(2, context.getRoutes().size());
+        Assert.assertFalse(watcher.check());
+    }
+
+    @Test
+    public void testInvalidRouteFileIsRejected() throws Exception {
+        RouteTable table = context.routeTable();
+
+        FileUtils.writeStringToFile(file, "GET /first myTestController.simpleAction\n"
+                + "this is not a route\n");
+        Assert.assertFalse(watcher.check());
+        Assert.assertFalse(watcher.check());
+
+        Assert.assertSame(table, context.routeTable());
+        Assert.assertEquals("myTestController.simpleAction", context.route("GET", "/first", null, null).get("action"));
+    }
+}
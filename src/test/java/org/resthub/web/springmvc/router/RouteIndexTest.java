@@ -0,0 +1,72 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.resthub.web.springmvc.router.Router.Route;
+
+public class RouteIndexTest {
+
+    private List<Route> routes;
+
+    @Before
+    public void setUp() {
+        routes = new ArrayList<Route>();
+        routes.add(Router.getRoute("GET", "/home", "pageController.home", null, null));
+        routes.add(Router.getRoute("GET", "/users/?", "userController.list", null, null));
+        routes.add(Router.getRoute("GET", "myhost.com/news", "newsController.myhost", null, null));
+        routes.add(Router.getRoute("GET", "/news", "newsController.list", "(source:'static')", null));
+        routes.add(Router.getRoute("PUT", "/home", "pageController.update", null, null));
+        routes.add(Router.getRoute("*", "/ping", "pingController.ping", null, null));
+        routes.add(Router.getRoute("GET", "/{<[a-z]+>page}", "pageController.show", null, null));
+        routes.add(Router.getRoute("GET", "/about", "pageController.about", null, null));
+    }
+
+    @Test
+    public void testStaticRoutes() {
+        RouteIndex.MethodTable table = new RouteIndex(routes, false).table("GET");
+
+        Assert.assertSame(routes.get(0), table.staticRoute("samplehost.org", "/home"));
+        Assert.assertSame(routes.get(1), table.staticRoute("samplehost.org", "/users"));
+        Assert.assertSame(routes.get(1), table.staticRoute("samplehost.org", "/users/"));
+        Assert.assertSame(routes.get(2), table.staticRoute("myhost.com", "/news"));
+        Assert.assertSame(routes.get(3), table.staticRoute("samplehost.org", "/news"));
+        Assert.assertEquals("static", table.staticRoute("samplehost.org", "/news").staticArgs.get("source"));
+        Assert.assertSame(routes.get(5), table.staticRoute("samplehost.org", "/ping"));
+    }
+
+    @Test
+    public void testShadowedStaticRoute() {
+        RouteIndex.MethodTable table = new RouteIndex(routes, false).table("GET");
+
+        // "/about" is declared after "/{page}", which may match the same path
+        Assert.assertNull(table.staticRoute("samplehost.org", "/about"));
+        Assert.assertNull(table.staticRoute(null, "/home"));
+    }
+
+    @Test
+    public void testMethodTables() {
+        RouteIndex index = new RouteIndex(routes, false);
+
+        Assert.assertSame(routes.get(4), index.table("put").staticRoute("samplehost.org", "/home"));
+        Assert.assertSame(routes.get(0), index.table("HEAD").staticRoute("samplehost.org", "/home"));
+        Assert.assertNull(index.table("PATCH").staticRoute("samplehost.org", "/home"));
+        Assert.assertSame(routes.get(5), index.table("PATCH").staticRoute("samplehost.org", "/ping"));
+        Assert.assertEquals(routes.size(), index.table(null).routes.length);
+    }
+
+    @Test
+    public void testHostPartitionsBuiltOnce() {
+        RouteIndex index = new RouteIndex(routes, false);
+
+        RouteIndex.MethodTable myhost = index.table("GET", "myhost.com");
+        Assert.assertSame(myhost, index.table("GET", "myhost.com"));
+        Assert.assertSame(routes.get(2), myhost.staticRoute("myhost.com", "/news"));
+        RouteIndex.MethodTable other = index.table("GET", "otherhost.com");
+        Assert.assertNotSame(myhost, other);
+        Assert.assertEquals(myhost.routes.length - 1, other.routes.length);
+    }
+}
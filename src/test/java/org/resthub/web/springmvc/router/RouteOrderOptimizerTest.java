@@ -0,0 +1,164 @@
+package org.resthub.web.springmvc.router;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.resthub.web.springmvc.router.Router.Route;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class RouteOrderOptimizerTest {
+
+    @Test
+    public void testMayOverlap() {
+        Assert.assertFalse(overlap("GET /a", "POST /a"));
+        Assert.assertTrue(overlap("GET /a", "HEAD /a"));
+        Assert.assertTrue(overlap("* /a", "POST /a"));
+        Assert.assertFalse(overlap("GET /a/{x}", "GET /b/{y}"));
+        Assert.assertFalse(overlap("GET /regex/{<[0-9]+>number}", "GET /regex/{<[a-z]+>string}"));
+        Assert.assertTrue(overlap("GET /regex/{<[0-9a-f]+>hex}", "GET /regex/{<[a-z]+>string}"));
+        Assert.assertTrue(overlap("GET /a/{x}", "GET /a/b"));
+        Assert.assertFalse(overlap("GET /a/{<[0-9]+>x}", "GET /a/b"));
+        Assert.assertFalse(overlap("GET /a", "GET /a/{x}"));
+        Assert.assertTrue(overlap("GET /a/?", "GET /a"));
+        Assert.assertTrue(overlap("GET /{x}", "GET /a"));
+        Assert.assertFalse(overlap("GET myhost.com/a", "GET otherhost.com/a"));
+        Assert.assertTrue(overlap("GET {host}/a", "GET otherhost.com/a"));
+        // alternatives don't share the literal prefix
+        Assert.assertTrue(overlap("GET /foo|/bar", "GET /bar"));
+        Assert.assertTrue(overlap("GET /bar", "GET /foo|/bar"));
+        Assert.assertTrue(overlap("GET /a/(b|c)", "GET /a/c"));
+        Assert.assertFalse(overlap("GET /a/{<b|c>x}", "GET /d/{y}"));
+    }
+
+    @Test
+    public void testAlternativesKeepTheirOrder() {
+        List<Route> routes = routes("GET /foo|/bar", "GET /bar");
+        RouteOrderOptimizer optimizer = new RouteOrderOptimizer(null);
+        optimizer.hit(routes.get(1));
+
+        Assert.assertEquals(routes, optimizer.order(routes));
+    }
+
+    @Test
+    public void testHotRoutesMoveBeforeDisjointRoutes() {
+        List<Route> routes = routes("GET /a/{x}", "GET /{x}/c", "GET /d/{y}", "GET /e/{z}");
+        RouteOrderOptimizer optimizer = new RouteOrderOptimizer(null);
+        for (int i = 0; i < 5; i++) {
+            optimizer.hit(routes.get(3));
+        }
+        optimizer.hit(routes.get(2));
+
+        List<Route> order = optimizer.order(routes);
+
+        // "/e/{z}" can't pass "/{x}/c", which may match "/e/c"
+        Assert.assertEquals(Arrays.asList(routes.get(0), routes.get(1), routes.get(3), routes.get(2)), order);
+    }
+
+    @Test
+    public void testProfileIsPersisted() throws Exception {
+        File profile = File.createTempFile("routes", ".profile");
+        try {
+            List<Route> routes = routes("GET /a/{x}", "GET /b/{y}");
+            RouteOrderOptimizer optimizer = new RouteOrderOptimizer(profile);
+            optimizer.hit(routes.get(1));
+            optimizer.order(routes);
+            optimizer.stop();
+
+            // routes parsed again after a restart
+            List<Route> reloaded = routes("GET /a/{x}", "GET /b/{y}");
+            List<Route> order = new RouteOrderOptimizer(profile).order(reloaded);
+            Assert.assertEquals(Arrays.asList(reloaded.get(1), reloaded.get(0)), order);
+        } finally {
+            profile.delete();
+        }
+    }
+
+    @Test
+    public void testReorderingKeepsRoutingResults() {
+        RouterContext context = new RouterContext();
+        context.getRoutes().addAll(routes("GET /regex/{<[0-9]+>number}", "GET /regex/{<[a-z]+>string}",
+                "GET /item/{id}", "GET /{x}/other"));
+        context.enableRouteOrderOptimization(null);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals("controller.action2", context.route("GET", "/item/3", null, null).get("action"));
+        }
+        Assert.assertEquals("controller.action1", context.route("GET", "/regex/abc", null, null).get("action"));
+        List<Route> declared = new ArrayList<Route>(context.getRoutes());
+
+        context.optimizeRouteOrder();
+
+        Assert.assertEquals(declared, context.getRoutes());
+        Assert.assertEquals(Arrays.asList(declared.get(2), declared.get(1), declared.get(0), declared.get(3)),
+                context.routeTable().matchOrder);
+        Assert.assertEquals("controller.action2", context.route("GET", "/item/3", null, null).get("action"));
+        Assert.assertEquals("controller.action2", context.route("GET", "/item/other", null, null).get("action"));
+        Assert.assertEquals("controller.action3", context.route("GET", "/12/other", null, null).get("action"));
+        Assert.assertEquals("controller.action0", context.route("GET", "/regex/12", null, null).get("action"));
+        Assert.assertEquals("controller.action1", context.route("GET", "/regex/abc", null, null).get("action"));
+
+        context.disableRouteOrderOptimization();
+        Assert.assertEquals(declared, context.routeTable().matchOrder);
+    }
+
+    @Test
+    public void testCachedHitsCounted() throws Exception {
+        File profile = File.createTempFile("routes", ".profile");
+        try {
+            RouterContext context = new RouterContext();
+            context.setRouteCacheSize(10);
+            context.getRoutes().addAll(routes("GET /static", "GET /item/{id}"));
+            context.enableRouteOrderOptimization(profile);
+            for (int i = 0; i < 2; i++) {
+                context.findRoute(request("/static"));
+                // the second request is answered by the routing cache
+                context.findRoute(request("/item/1"));
+            }
+            Assert.assertEquals(1, context.getRouteCache().getHits());
+            context.optimizeRouteOrder();
+            context.disableRouteOrderOptimization();
+
+            Properties counts = new Properties();
+            InputStream in = new FileInputStream(profile);
+            try {
+                counts.load(in);
+            } finally {
+                in.close();
+            }
+            // static routes are answered before any ordered evaluation
+            Assert.assertNull(counts.getProperty(RouteOrderOptimizer.signature(context.getRoutes().get(0))));
+            Assert.assertEquals("2", counts.getProperty(RouteOrderOptimizer.signature(context.getRoutes().get(1))));
+        } finally {
+            HTTPRequestAdapter.current.remove();
+            profile.delete();
+        }
+    }
+
+    private static HTTPRequestAdapter request(String path) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.addHeader("host", "example.com");
+        return HTTPRequestAdapter.parseRequest(request);
+    }
+
+    private static boolean overlap(String a, String b) {
+        List<Route> routes = routes(a, b);
+        boolean overlap = RouteOrderOptimizer.mayOverlap(routes.get(0), routes.get(1));
+        Assert.assertEquals(overlap, RouteOrderOptimizer.mayOverlap(routes.get(1), routes.get(0)));
+        return overlap;
+    }
+
+    private static List<Route> routes(String... definitions) {
+        List<Route> routes = new ArrayList<Route>();
+        for (String definition : definitions) {
+            String[] parts = definition.split(" ");
+            routes.add(Router.getRoute(parts[0], parts[1], "controller.action" + routes.size(), null, null));
+        }
+        return routes;
+    }
+}
@@ -0,0 +1,98 @@
+package org.resthub.web.springmvc.router;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.resthub.web.springmvc.router.Router.Route;
+import org.springframework.core.io.ClassPathResource;
+
+public class RouteTableCacheTest {
+
+    private File directory;
+
+    private RouteTableCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("routecache", "");
+        directory.delete();
+        cache = new RouteTableCache(directory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testReadWrittenRoutes() throws Exception {
+        List<Route> routes = Router.parse(new ClassPathResource("routes.conf"), "");
+        List<String> paths = Arrays.asList("routes.conf");
+        List<String> hashes = Arrays.asList("hash");
+        cache.write("key", paths, hashes, Collections.singletonList(routes));
+
+        List<List<Route>> read = cache.read("key", paths, hashes);
+        Assert.assertNotNull(read);
+        List<Route> cached = read.get(0);
+        Assert.assertEquals(routes.size(), cached.size());
+        for (int i = 0; i < routes.size(); i++) {
+            Assert.assertEquals(routes.get(i).toString(), cached.get(i).toString());
+            Assert.assertEquals(routes.get(i).routesFileLine, cached.get(i).routesFileLine);
+        }
+
+        RouteIndex index = new RouteTable(cached, false).index();
+        RouteIndex.RouteMatch match = index.table("GET", "sub.domain.org")
+                .match("/bind/regexphost", null, "sub.domain.org", null);
+        Assert.assertEquals("bindTestController.bindRegexpHostAction", match.route.action);
+        Assert.assertEquals("sub", match.args.get("subdomain"));
+        match = index.table("GET").match("/qsparamplaynicewithotherroutingfeatures/name/abc", null, null,
+                new QueryString("qsParamA=abc"));
+        Assert.assertEquals("abc", match.args.get("myName"));
+        Assert.assertEquals("someStaticVal", match.args.get("myStaticArg"));
+        Assert.assertEquals("/param/abc",
+                Router.reverse(cached, "myTestController.paramAction",
+                        Collections.<String, Object>singletonMap("param", "abc")).url);
+    }
+
+    @Test
+    public void testStaleEntriesAreIgnored() throws Exception {
+        List<Route> routes = Router.parse(new ClassPathResource("addroutes.conf"), "");
+        List<String> paths = Arrays.asList("addroutes.conf");
+        cache.write("key", paths, Arrays.asList("hash"), Collections.singletonList(routes));
+
+        Assert.assertNull(cache.read("other", paths, Arrays.asList("hash")));
+        Assert.assertNull(cache.read("key", paths, Arrays.asList("changed")));
+
+        // a corrupted file is ignored
+        File[] files = directory.listFiles();
+        Assert.assertEquals(1, files.length);
+        FileUtils.writeStringToFile(files[0], "garbage");
+        Assert.assertNull(cache.read("key", paths, Arrays.asList("hash")));
+    }
+
+    @Test
+    public void testKeyedByLibraryVersion() throws Exception {
+        Assert.assertFalse("dev".equals(RouteTableCache.LIBRARY_VERSION));
+
+        List<Route> routes = Router.parse(new ClassPathResource("addroutes.conf"), "");
+        List<String> paths = Arrays.asList("addroutes.conf");
+        List<String> hashes = Arrays.asList("hash");
+        RouteTableCache previous = new RouteTableCache(directory, "0.6");
+        previous.write("key", paths, hashes, Collections.singletonList(routes));
+
+        // an upgraded library ignores the routes cached by the previous one
+        RouteTableCache upgraded = new RouteTableCache(directory, "0.7");
+        Assert.assertNull(upgraded.read("key", paths, hashes));
+        upgraded.write("key", paths, hashes, Collections.singletonList(routes));
+        Assert.assertEquals(2, directory.listFiles().length);
+        Assert.assertNotNull(upgraded.read("key", paths, hashes));
+        Assert.assertNotNull(previous.read("key", paths, hashes));
+    }
+}
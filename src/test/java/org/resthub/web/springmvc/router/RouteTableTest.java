@@ -0,0 +1,52 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+import org.resthub.web.springmvc.router.Router.Route;
+
+public class RouteTableTest {
+
+    @After
+    public void tearDown() {
+        Router.routes.clear();
+    }
+
+    @Test
+    public void testSnapshot() {
+        List<Route> routes = new ArrayList<Route>();
+        routes.add(Router.getRoute("GET", "/home", "pageController.home", null, null));
+        RouteTable table = new RouteTable(routes, false);
+        routes.add(Router.getRoute("GET", "/about", "pageController.about", null, null));
+
+        Assert.assertEquals(1, table.routes.size());
+        Assert.assertSame(table.index(), table.index());
+        try {
+            table.routes.clear();
+            Assert.fail("route table should be read-only");
+        } catch (UnsupportedOperationException ex) {
+        }
+    }
+
+    @Test
+    public void testChangesPublishNewTable() {
+        Router.routes.clear();
+        Router.addRoute("GET", "/home", "pageController.home");
+        RouteTable before = Router.routeTable();
+
+        Iterator<Route> iterator = Router.routes.iterator();
+        Router.addRoute("GET", "/about", "pageController.about");
+
+        // iterators keep reading the snapshot they started with
+        Assert.assertEquals("pageController.home", iterator.next().action);
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertEquals(1, before.routes.size());
+        Assert.assertNotSame(before, Router.routeTable());
+        Assert.assertEquals(2, Router.routes.size());
+        Assert.assertEquals("pageController.about", Router.routes.get(0).action);
+    }
+}
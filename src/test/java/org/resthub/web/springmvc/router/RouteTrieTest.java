@@ -0,0 +1,93 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.resthub.web.springmvc.router.Router.Route;
+
+public class RouteTrieTest {
+
+    private List<Route> routes;
+
+    private RouteTrie trie;
+
+    @Before
+    public void setUp() {
+        routes = new ArrayList<Route>();
+        routes.add(Router.getRoute("GET", "/user/?", "userController.listAll", null, null));
+        routes.add(Router.getRoute("GET", "/user/{<[0-9]+>id}", "userController.showUser", null, null));
+        routes.add(Router.getRoute("GET", "/user/{name}", "userController.showUserByName", null, null));
+        routes.add(Router.getRoute("GET", "/files/{<.*>path}", "fileController.show", null, null));
+        routes.add(Router.getRoute("GET", "/user/add", "userController.add", null, null));
+        routes.add(Router.getRoute("GET", "/pages/page-{<[0-9]+>id}.html", "pageController.show", null, null));
+        trie = new RouteTrie(routes);
+    }
+
+    @Test
+    public void testLiteralAndOptionalSlash() {
+        assertCandidates("/user", 0);
+        assertCandidates("/user/", 0);
+    }
+
+    @Test
+    public void testConstrainedSegments() {
+        // first declared route still comes first
+        assertCandidates("/user/42", 1, 2);
+        assertCandidates("/user/add", 2, 4);
+        assertCandidates("/user/bob", 2);
+    }
+
+    @Test
+    public void testCatchAll() {
+        assertCandidates("/files/a/b/c", 3);
+        assertCandidates("/pages/page-12.html", 5);
+        assertCandidates("/other/page-12.html", new int[0]);
+    }
+
+    @Test
+    public void testCandidatesMatchLinearScan() {
+        String[] paths = {"/user", "/user/", "/user/42", "/user/add", "/files/x", "/pages/page-1.html", "/unknown", "/"};
+        for (String path : paths) {
+            Route expected = null;
+            for (Route route : routes) {
+                if (route.matches("GET", path) != null) {
+                    expected = route;
+                    break;
+                }
+            }
+            Route actual = null;
+            BitSet candidates = trie.candidates(path);
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                if (routes.get(i).matches("GET", path) != null) {
+                    actual = routes.get(i);
+                    break;
+                }
+            }
+            Assert.assertSame(path, expected, actual);
+        }
+    }
+
+    @Test
+    public void testSegmentSafeConstraints() {
+        Assert.assertTrue(RouteTrie.isSegmentSafe("[^/]+"));
+        Assert.assertTrue(RouteTrie.isSegmentSafe("[a-z0-9\\-_]+"));
+        Assert.assertTrue(RouteTrie.isSegmentSafe("\\d{4}"));
+        Assert.assertFalse(RouteTrie.isSegmentSafe(".*"));
+        Assert.assertFalse(RouteTrie.isSegmentSafe("[^a]+"));
+        Assert.assertFalse(RouteTrie.isSegmentSafe("[!-~]+"));
+        Assert.assertFalse(RouteTrie.isSegmentSafe("(a|b)"));
+    }
+
+    private void assertCandidates(String path, int... expected) {
+        BitSet candidates = trie.candidates(path);
+        BitSet wanted = new BitSet();
+        for (int index : expected) {
+            wanted.set(index);
+        }
+        Assert.assertEquals(path, wanted, candidates);
+    }
+}
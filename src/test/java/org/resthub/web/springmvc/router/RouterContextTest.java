@@ -0,0 +1,146 @@
+package org.resthub.web.springmvc.router;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+public class RouterContextTest {
+
+    @Test
+    public void testIdenticalRouteFilesShareTable() throws Exception {
+        List<Resource> files = Arrays.<Resource>asList(new ClassPathResource("routes.conf"));
+        RouterContext first = new RouterContext();
+        RouterContext second = new RouterContext();
+        first.load(files, "");
+        second.load(files, "");
+
+        Assert.assertSame(first.routeTable(), second.routeTable());
+
+        // a different prefix gives another table
+        RouterContext prefixed = new RouterContext();
+        prefixed.load(files, "/app");
+        Assert.assertNotSame(first.routeTable(), prefixed.routeTable());
+    }
+
+    @Test
+    public void testContextsAreIsolated() throws Exception {
+        List<Resource> files = Arrays.<Resource>asList(new ClassPathResource("routes.conf"));
+        RouterContext first = new RouterContext();
+        RouterContext second = new RouterContext();
+        first.load(files, "");
+        second.load(files, "");
+
+        first.getRoutes().add(0, Router.getRoute("GET", "/isolated", "myTestController.simpleAction", null, null));
+
+        Assert.assertEquals(second.getRoutes().size() + 1, first.getRoutes().size());
+        Assert.assertEquals("myTestController.simpleAction", first.route("GET", "/isolated", null, null).get("action"));
+        Assert.assertNull(second.route("GET", "/isolated", null, null).get("action"));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testLastLoadingIsPerContext() throws Exception {
+        List<Resource> files = Arrays.<Resource>asList(new ClassPathResource("routes.conf"));
+        RouterContext previousDefault = Router.getDefaultContext();
+        RouterContext defaultContext = new RouterContext();
+        RouterContext other = new RouterContext();
+        try {
+            Router.setDefaultContext(defaultContext);
+            Assert.assertEquals(-1, Router.lastLoading);
+            defaultContext.load(files, "");
+            long loaded = defaultContext.getLastLoading();
+            Assert.assertTrue(loaded > 0);
+            Assert.assertEquals(loaded, Router.lastLoading);
+
+            // other contexts don't change the deprecated global value
+            Thread.sleep(5);
+            other.load(files, "");
+            Assert.assertTrue(other.getLastLoading() > loaded);
+            Assert.assertEquals(loaded, Router.lastLoading);
+        } finally {
+            Router.setDefaultContext(previousDefault);
+        }
+    }
+
+    @Test
+    public void testOnlyChangedRouteFilesAreParsed() throws Exception {
+        File first = File.createTempFile("first", ".conf");
+        File second = File.createTempFile("second", ".conf");
+        try {
+            FileUtils.writeStringToFile(first, "GET /a myTestController.simpleAction\nGET /b myTestController.simpleAction\n");
+            FileUtils.writeStringToFile(second, "GET /c myTestController.simpleAction\n");
+            List<Resource> files = Arrays.<Resource>asList(new FileSystemResource(first), new FileSystemResource(second));
+            RouterContext context = new RouterContext();
+            context.load(files, "/incremental");
+            List<Router.Route> before = new ArrayList<Router.Route>(context.getRoutes());
+
+            FileUtils.writeStringToFile(second, "GET /c myTestController.simpleAction\nGET /d myTestController.simpleAction\n");
+            context.load(files, "/incremental");
+
+            List<Router.Route> after = context.getRoutes();
+            Assert.assertEquals(4, after.size());
+            Assert.assertSame(before.get(0), after.get(0));
+            Assert.assertSame(before.get(1), after.get(1));
+            Assert.assertNotSame(before.get(2), after.get(2));
+            Assert.assertEquals("/incremental/c", after.get(2).path);
+            Assert.assertEquals("/incremental/d", after.get(3).path);
+        } finally {
+            first.delete();
+            second.delete();
+        }
+    }
+
+    @Test
+    public void testSharedTableReloadsIncrementally() throws Exception {
+        File first = File.createTempFile("first", ".conf");
+        File second = File.createTempFile("second", ".conf");
+        try {
+            FileUtils.writeStringToFile(first, "GET /a myTestController.simpleAction\n");
+            FileUtils.writeStringToFile(second, "GET /c myTestController.simpleAction\n");
+            List<Resource> files = Arrays.<Resource>asList(new FileSystemResource(first), new FileSystemResource(second));
+            RouterContext loading = new RouterContext();
+            loading.load(files, "/shared");
+            RouterContext sharing = new RouterContext();
+            sharing.load(files, "/shared");
+            Assert.assertSame(loading.routeTable(), sharing.routeTable());
+
+            // the context reusing the shared table knows the routes of each file
+            FileUtils.writeStringToFile(second, "GET /d myTestController.simpleAction\n");
+            sharing.load(files, "/shared");
+            Assert.assertSame(loading.getRoutes().get(0), sharing.getRoutes().get(0));
+            Assert.assertEquals("/shared/d", sharing.getRoutes().get(1).path);
+        } finally {
+            first.delete();
+            second.delete();
+        }
+    }
+
+    @Test
+    public void testBulkRouteChangesPublishOnce() {
+        RouterContext context = new RouterContext();
+        context.getRoutes().add(Router.getRoute("GET", "/z", "controller.z", null, null));
+        List<Router.Route> routes = new ArrayList<Router.Route>();
+        for (int i = 0; i < 3; i++) {
+            routes.add(Router.getRoute("GET", "/r" + i, "controller.r" + i, null, null));
+        }
+
+        RouteTable table = context.routeTable();
+        context.getRoutes().addAll(0, routes);
+        Assert.assertNotSame(table, context.routeTable());
+        Assert.assertEquals(4, context.getRoutes().size());
+        Assert.assertEquals("/r0", context.getRoutes().get(0).path);
+        Assert.assertEquals("/z", context.getRoutes().get(3).path);
+
+        context.setRoutes(routes.subList(1, 3));
+        Assert.assertEquals(routes.subList(1, 3), context.getRoutes());
+        Assert.assertEquals("controller.r2", context.route("GET", "/r2", null, null).get("action"));
+    }
+}
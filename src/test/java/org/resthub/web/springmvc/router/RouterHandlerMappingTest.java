@@ -839,4 +839,126 @@ public class RouterHandlerMappingTest {
         Assert.assertEquals(this.handlerName+".qsParamPlayNiceWithOtherRoutingFeatures", route.action);            
     }
 
+    /**
+     * Test route with HTTP method overriding (HEAD -> GET) on a route with arguments:
+     * GET     /regex/{<[0-9]+>number}          myTestController.regexNumberAction
+     * and a method that is not used by any route.
+     * @throws Exception
+     */
+    @Test
+    public void testMethodDispatch() throws Exception {
+
+        MockHttpServletRequest request = new MockHttpServletRequest("HEAD", "/regex/42");
+        request.addHeader("host", sampleHost);
+        HandlerExecutionChain chain = this.hm.getHandler(request);
+
+        RouterHandler handler = (RouterHandler)chain.getHandler();
+        Route route = handler.getRoute();
+        Assert.assertEquals(this.handlerName+".regexNumberAction", route.action);
+
+        request = new MockHttpServletRequest("PATCH", "/regex/42");
+        request.addHeader("host", sampleHost);
+        chain = this.hm.getHandler(request);
+        Assert.assertNull(chain);
+    }
+
+
+    /**
+     * Test routes:
+     * GET     /regex/{<[0-9]+>number}          myTestController.regexNumberAction
+     * GET     /qsparampresence [qsParamA]        myTestController.qsParamPresence
+     * @throws Exception
+     */
+    @Test
+    public void testRouteCache() throws Exception {
+
+        Router.setRouteCacheSize(100);
+        LruCache<?, ?> cache = Router.getRouteCache();
+
+        for (int i = 0; i < 2; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/regex/42");
+            request.addHeader("host", sampleHost);
+            HandlerExecutionChain chain = this.hm.getHandler(request);
+            Route route = ((RouterHandler)chain.getHandler()).getRoute();
+            Assert.assertEquals(this.handlerName+".regexNumberAction", route.action);
+            Map<String, String> args = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+            Assert.assertEquals("42", args.get("number"));
+            // each request gets its own arguments, apart from the cached ones
+            args.put("number", "0");
+        }
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.size());
+
+        // results depending on the query string are not cached
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/qsparampresence");
+        request.addHeader("host", sampleHost);
+        request.setQueryString("qsParamA=abc");
+        Assert.assertNotNull(this.hm.getHandler(request));
+        request = new MockHttpServletRequest("GET", "/qsparampresence");
+        request.addHeader("host", sampleHost);
+        Assert.assertNull(this.hm.getHandler(request));
+        Assert.assertEquals(1, cache.size());
+
+        // the cache is cleared when routes change
+        Router.addRoute("GET", "/regex/42", "myTestController.simpleAction");
+        Assert.assertEquals(0, cache.size());
+
+        Router.setRouteCacheSize(0);
+    }
+
+    /**
+     * Test route:
+     * GET     /qsparampresence [qsParamA]        myTestController.qsParamPresence
+     * @throws Exception
+     */
+    @Test
+    public void testRouteMissCache() throws Exception {
+
+        Router.setRouteMissCacheSize(100);
+        LruCache<?, ?> cache = Router.getRouteMissCache();
+
+        for (int i = 0; i < 2; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/unknown/path");
+            request.addHeader("host", sampleHost);
+            Assert.assertNull(this.hm.getHandler(request));
+        }
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.size());
+
+        // misses depending on the query string are not cached
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/qsparampresence");
+        request.addHeader("host", sampleHost);
+        Assert.assertNull(this.hm.getHandler(request));
+        Assert.assertEquals(1, cache.size());
+
+        // the cache is cleared when routes change
+        Router.addRoute("GET", "/unknown/path", "myTestController.simpleAction");
+        request = new MockHttpServletRequest("GET", "/unknown/path");
+        request.addHeader("host", sampleHost);
+        Assert.assertNotNull(this.hm.getHandler(request));
+
+        Router.setRouteMissCacheSize(0);
+    }
+
+    @Test
+    public void testContextBoundOnlyForHandledRequests() throws Exception {
+        RouterContext mappingContext = Router.getDefaultContext();
+        RouterContext otherContext = new RouterContext();
+        Router.setDefaultContext(otherContext);
+        try {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/unknown/route/path");
+            request.addHeader("host", sampleHost);
+            Assert.assertNull(this.hm.getHandler(request));
+            Assert.assertSame(otherContext, Router.current());
+
+            request = new MockHttpServletRequest("GET", "/simpleaction");
+            request.addHeader("host", sampleHost);
+            HandlerExecutionChain chain = this.hm.getHandler(request);
+            Assert.assertSame(mappingContext, Router.current());
+            chain.getInterceptors()[0].afterCompletion(request, null, chain.getHandler(), null);
+            Assert.assertSame(otherContext, Router.current());
+        } finally {
+            Router.setDefaultContext(mappingContext);
+        }
+    }
 }
@@ -0,0 +1,125 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.resthub.web.springmvc.router.Router.Route;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class RouterMetricsTest {
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        RouterContext context = new RouterContext();
+        context.getRoutes().add(Router.getRoute("GET", "/a/{x}", "controller.a", null, null));
+        context.getRoutes().add(Router.getRoute("GET", "/b/{y}", "controller.b", null, null));
+        RouterMetrics metrics = new RouterMetrics();
+        context.addListener(metrics);
+
+        for (int i = 0; i < 3; i++) {
+            context.findRoute(request("GET", "/a/" + i));
+        }
+        Route b = context.findRoute(request("GET", "/b/1"));
+        Assert.assertSame(Router.NO_ROUTE, context.findRoute(request("GET", "/c")));
+
+        Assert.assertEquals(5, metrics.getRequests());
+        Assert.assertEquals(4, metrics.getHits());
+        Assert.assertEquals(1, metrics.getMisses());
+        Assert.assertEquals(1, metrics.getHits(b));
+        Assert.assertTrue(metrics.getCandidatesEvaluated() > 0);
+        String[] top = metrics.getTopRoutes();
+        Assert.assertEquals(2, top.length);
+        Assert.assertTrue(top[0], top[0].endsWith(" : 3"));
+
+        context.removeListener(metrics);
+        context.findRoute(request("GET", "/a/4"));
+        Assert.assertEquals(5, metrics.getRequests());
+
+        metrics.reset();
+        Assert.assertEquals(0, metrics.getRequests());
+        Assert.assertEquals(0, metrics.getTopRoutes().length);
+    }
+
+    @Test
+    public void testRouteHitsSurviveReloads() throws Exception {
+        RouterContext context = new RouterContext();
+        context.getRoutes().add(Router.getRoute("GET", "/a/{x}", "controller.a", null, null));
+        RouterMetrics metrics = new RouterMetrics();
+        context.addListener(metrics);
+        context.findRoute(request("GET", "/a/1"));
+
+        // the reloaded route is a new instance with the same definition
+        context.getRoutes().set(0, Router.getRoute("GET", "/a/{x}", "controller.a", null, null));
+        Route reloaded = context.findRoute(request("GET", "/a/2"));
+
+        Assert.assertEquals(2, metrics.getHits(reloaded));
+        Assert.assertEquals(1, metrics.getTopRoutes().length);
+    }
+
+    @Test
+    public void testFailingListenerDoesNotBreakRouting() throws Exception {
+        RouterContext context = new RouterContext();
+        context.getRoutes().add(Router.getRoute("GET", "/a", "controller.a", null, null));
+        final List<Route> routed = new ArrayList<Route>();
+        context.addListener(new RouterListener() {
+            public void requestRouted(HTTPRequestAdapter request, Route route, int candidates, long nanos) {
+                throw new IllegalStateException();
+            }
+        });
+        context.addListener(new RouterListener() {
+            public void requestRouted(HTTPRequestAdapter request, Route route, int candidates, long nanos) {
+                routed.add(route);
+            }
+        });
+
+        Route route = context.findRoute(request("GET", "/a"));
+
+        Assert.assertEquals("controller.a", route.action);
+        Assert.assertEquals(1, routed.size());
+        Assert.assertSame(route, routed.get(0));
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1000);
+        }
+        histogram.record(1000000);
+
+        Assert.assertEquals(100, histogram.count());
+        Assert.assertEquals(1023, histogram.percentile(50));
+        Assert.assertEquals(1023, histogram.percentile(99));
+        Assert.assertEquals((1L << 20) - 1, histogram.percentile(100));
+        Assert.assertEquals((99 * 1000 + 1000000) / 100.0, histogram.mean(), 0.001);
+    }
+
+    @Test
+    public void testStripedCounter() throws Exception {
+        final StripedCounter counter = new StripedCounter(true);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        counter.increment();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(4000, counter.sum());
+    }
+
+    private static HTTPRequestAdapter request(String method, String path) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.addHeader("host", "localhost");
+        return HTTPRequestAdapter.parseRequest(request);
+    }
+}
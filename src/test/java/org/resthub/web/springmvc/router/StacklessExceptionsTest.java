@@ -0,0 +1,78 @@
+package org.resthub.web.springmvc.router;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+import org.resthub.web.springmvc.router.exceptions.ActionNotFoundException;
+import org.resthub.web.springmvc.router.exceptions.NoHandlerFoundException;
+import org.resthub.web.springmvc.router.exceptions.NoRouteFoundException;
+import org.resthub.web.springmvc.router.exceptions.StacklessExceptions;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.support.XmlWebApplicationContext;
+
+public class StacklessExceptionsTest {
+
+    @After
+    public void tearDown() {
+        StacklessExceptions.setEnabled(false);
+    }
+
+    @Test
+    public void testStackTraces() {
+        Assert.assertFalse(StacklessExceptions.isEnabled());
+        Assert.assertTrue(new NoRouteFoundException("GET", "/").getStackTrace().length > 0);
+        Assert.assertTrue(new NoHandlerFoundException("a.b", new HashMap<String, Object>()).getStackTrace().length > 0);
+        Assert.assertTrue(new ActionNotFoundException("a.b", "missing").getStackTrace().length > 0);
+
+        StacklessExceptions.setEnabled(true);
+        Assert.assertEquals(0, new NoRouteFoundException("GET", "/").getStackTrace().length);
+        Assert.assertEquals(0, new NoHandlerFoundException("a.b", new HashMap<String, Object>()).getStackTrace().length);
+        ActionNotFoundException ex = new ActionNotFoundException("a.b", "Controller a not found");
+        Assert.assertEquals(0, ex.getStackTrace().length);
+        Assert.assertEquals("Action <strong>a.b</strong> could not be found. Error raised is <strong>Controller a not found</strong>",
+                ex.getErrorDescription());
+    }
+
+    @Test
+    public void testRoutingMisses() {
+        StacklessExceptions.setEnabled(true);
+        RouterContext context = new RouterContext();
+        context.getRoutes().add(Router.getRoute("GET", "/users/{id}", "userController.show", null, null));
+        try {
+            context.reverse("userController.delete", new HashMap<String, Object>());
+            Assert.fail("no route should reverse userController.delete");
+        } catch (NoHandlerFoundException ex) {
+            Assert.assertEquals(0, ex.getStackTrace().length);
+            Assert.assertEquals("userController.delete", ex.getAction());
+        }
+        Assert.assertNull(context.tryReverse("userController.delete", new HashMap<String, Object>()));
+    }
+
+    @Test
+    public void testRestoredOnDestroy() {
+        MockServletContext sc = new MockServletContext("");
+        XmlWebApplicationContext wac = new XmlWebApplicationContext();
+        wac.setServletContext(sc);
+        wac.setConfigLocations(new String[] {"/routerTestContext.xml"});
+        wac.refresh();
+
+        RouterHandlerMapping mapping = new RouterHandlerMapping();
+        mapping.setRouteFiles(Arrays.asList("classpath:routes.conf"));
+        mapping.setStacklessExceptions(true);
+        mapping.setApplicationContext(wac);
+        Assert.assertTrue(StacklessExceptions.isEnabled());
+        mapping.destroy();
+        Assert.assertFalse(StacklessExceptions.isEnabled());
+    }
+
+    @Test
+    public void testCauseKept() {
+        StacklessExceptions.setEnabled(true);
+        ActionNotFoundException ex = new ActionNotFoundException("a.b", new Exception("Controller a not found"));
+        Assert.assertEquals(0, ex.getStackTrace().length);
+        Assert.assertEquals("Controller a not found", ex.getCause().getMessage());
+    }
+}
@@ -0,0 +1,67 @@
+package org.resthub.web.springmvc.router;
+
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class UrlTemplateTest {
+
+    @Test
+    public void testEncodeLikeUrlEncoder() throws Exception {
+        String[] values = {"", "plain-value_1.2*", "a b+c&d=e/f?g#h", "caf\u00e9 cr\u00e8me", "\u20ac100",
+                "\ud83d\ude00 smile", "broken \ud83d surrogate", "\ude00", "50% $off ~tilde", "\u0000\u007f\u0080\u07ff\u0800\uffff"};
+        for (String value : values) {
+            StringBuilder encoded = new StringBuilder("prefix:");
+            UrlTemplate.encode(value, encoded);
+            Assert.assertEquals(value, "prefix:" + URLEncoder.encode(value, "utf-8"), encoded.toString());
+        }
+    }
+
+    @Test
+    public void testFill() {
+        UrlTemplate template = new UrlTemplate("/users/{<[0-9]+>id}/{tab}/{unknown}/{<>bad}/{id}", Arrays.asList("id", "tab"));
+        Map<String, Object> args = new HashMap<String, Object>();
+        args.put("id", 42);
+        args.put("unknown", "ignored");
+        StringBuilder url = new StringBuilder();
+        template.fill(url, args, true);
+
+        // arguments without value and unknown slots keep their source text
+        Assert.assertEquals("/users/42/{tab}/{unknown}/{<>bad}/42", url.toString());
+        Assert.assertFalse(template.isLiteral());
+        Assert.assertTrue(new UrlTemplate("/about", Arrays.<String>asList()).isLiteral());
+    }
+
+    @Test
+    public void testListValues() {
+        UrlTemplate template = new UrlTemplate("{tenant}.example.com", Arrays.asList("tenant"));
+        Map<String, Object> args = new HashMap<String, Object>();
+        args.put("tenant", Arrays.asList("acme", "other"));
+
+        StringBuilder url = new StringBuilder();
+        template.fill(url, args, true);
+        Assert.assertEquals("acme.example.com", url.toString());
+        url.setLength(0);
+        template.fill(url, args, false);
+        Assert.assertEquals("{tenant}.example.com", url.toString());
+    }
+
+    @Test
+    public void testReverse() {
+        RouterContext context = new RouterContext();
+        context.getRoutes().add(Router.getRoute("GET", "{tenant}.example.com/files/{name}/?", "fileController.show", null, null));
+
+        Map<String, Object> args = new HashMap<String, Object>();
+        args.put("tenant", "acme");
+        args.put("name", "a $b.txt");
+        args.put("q", Arrays.asList("x y", ":raw"));
+        Router.ActionDefinition definition = context.reverse("fileController.show", args);
+
+        Assert.assertEquals("/files/a+%24b.txt?q=x+y&q=:raw", definition.url);
+        Assert.assertEquals("acme.example.com", definition.host);
+    }
+}